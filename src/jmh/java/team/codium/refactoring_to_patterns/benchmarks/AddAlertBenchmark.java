@@ -0,0 +1,45 @@
+package team.codium.refactoring_to_patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import team.codium.refactoring_to_patterns.application.AddAlert;
+import team.codium.refactoring_to_patterns.domain.AddAlertCommand;
+import team.codium.refactoring_to_patterns.domain.Alert;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class AddAlertBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int alerts;
+
+    private Path directory;
+    private AddAlert addAlert;
+    private final Random random = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Datasets.createDirectory();
+        Datasets.writeUsers(directory.resolve("users.json"));
+        Datasets.writeAlerts(directory.resolve("alerts.json"), alerts);
+        addAlert = new AddAlert(directory.resolve("alerts.json").toString(), directory.resolve("users.json").toString(), null, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Datasets.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void execute() throws Exception {
+        Alert alert = Datasets.alert(random);
+        addAlert.execute(new AddAlertCommand(alert.userId(), alert.alertType(), alert.postalCode(), alert.minimumPrice(),
+                alert.maximumPrice(), alert.minimumRooms(), alert.maximumRooms(), alert.minimumSquareMeters(), alert.maximumSquareMeters()));
+    }
+}
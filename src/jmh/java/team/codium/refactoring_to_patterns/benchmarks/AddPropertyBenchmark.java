@@ -0,0 +1,50 @@
+package team.codium.refactoring_to_patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import team.codium.refactoring_to_patterns.application.AddProperty;
+import team.codium.refactoring_to_patterns.domain.AddPropertyCommand;
+import team.codium.refactoring_to_patterns.domain.Property;
+import team.codium.refactoring_to_patterns.infrastructure.*;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class AddPropertyBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private Path directory;
+    private AddProperty addProperty;
+    private final Random random = new Random(7);
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Datasets.createDirectory();
+        Datasets.writeUsers(directory.resolve("users.json"));
+        Datasets.writeProperties(directory.resolve("properties.json"), size);
+        Datasets.writeAlerts(directory.resolve("alerts.json"), size);
+        addProperty = new AddProperty(directory.resolve("properties.json").toString(), directory.resolve("users.json").toString(),
+                new EmailSender(), directory.resolve("alerts.json").toString(), new SmsSender(), new PushSender(), null, false);
+        nextId = size + 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Datasets.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void execute() throws Exception {
+        Property property = Datasets.property(nextId++, random);
+        addProperty.execute(new AddPropertyCommand(property.getId(), property.getDescription(), property.getPostalCode(),
+                property.getPrice(), property.getNumberOfRooms(), property.getSquareMeters(), property.getOwnerId()));
+    }
+}
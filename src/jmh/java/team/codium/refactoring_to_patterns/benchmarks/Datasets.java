@@ -0,0 +1,84 @@
+package team.codium.refactoring_to_patterns.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import team.codium.refactoring_to_patterns.domain.Alert;
+import team.codium.refactoring_to_patterns.domain.Property;
+import team.codium.refactoring_to_patterns.domain.User;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+final class Datasets {
+    static final int POSTAL_CODES = 1_000;
+    static final int USERS = 1_000;
+    private static final String[] ALERT_TYPES = {"email", "sms", "push"};
+
+    private Datasets() {
+    }
+
+    static Path createDirectory() throws IOException {
+        return Files.createTempDirectory("refactoring-to-patterns-benchmark");
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    static String postalCode(int index) {
+        return String.format("%05d", index % POSTAL_CODES);
+    }
+
+    static Property property(int id, Random random) {
+        return new Property(id, "Property " + id, postalCode(random.nextInt(POSTAL_CODES)), 20_000 + random.nextInt(980_000),
+                random.nextInt(7), 20 + random.nextInt(280), 1 + random.nextInt(USERS));
+    }
+
+    static Alert alert(Random random) {
+        int minimumPrice = random.nextInt(500_000);
+        return new Alert(1 + random.nextInt(USERS), ALERT_TYPES[random.nextInt(ALERT_TYPES.length)],
+                postalCode(random.nextInt(POSTAL_CODES)),
+                random.nextBoolean() ? null : minimumPrice, random.nextBoolean() ? null : minimumPrice + random.nextInt(500_000),
+                random.nextBoolean() ? null : random.nextInt(3), random.nextBoolean() ? null : 3 + random.nextInt(4),
+                random.nextBoolean() ? null : 20 + random.nextInt(100), random.nextBoolean() ? null : 120 + random.nextInt(200));
+    }
+
+    static void writeUsers(Path file) throws IOException {
+        writeArray(file, USERS, (id, random) -> new User(id + 1, "User " + (id + 1), "user" + (id + 1) + "@email.com", "6" + (10_000_000 + id)));
+    }
+
+    static void writeProperties(Path file, int count) throws IOException {
+        writeArray(file, count, (id, random) -> property(id + 1, random));
+    }
+
+    static void writeAlerts(Path file, int count) throws IOException {
+        writeArray(file, count, (id, random) -> alert(random));
+    }
+
+    private static void writeArray(Path file, int count, Generator generator) throws IOException {
+        Gson gson = new Gson();
+        Random random = new Random(42);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8); JsonWriter json = new JsonWriter(writer)) {
+            json.beginArray();
+            for (int i = 0; i < count; i++) {
+                Object record = generator.generate(i, random);
+                gson.toJson(record, record.getClass(), json);
+            }
+            json.endArray();
+        }
+    }
+
+    private interface Generator {
+        Object generate(int index, Random random);
+    }
+}
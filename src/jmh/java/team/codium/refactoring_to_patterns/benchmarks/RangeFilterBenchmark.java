@@ -0,0 +1,72 @@
+package team.codium.refactoring_to_patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import team.codium.refactoring_to_patterns.domain.Property;
+import team.codium.refactoring_to_patterns.domain.RoomRange;
+import team.codium.refactoring_to_patterns.domain.SquareMetersRange;
+import team.codium.refactoring_to_patterns.infrastructure.RangeFilter;
+import team.codium.refactoring_to_patterns.infrastructure.RangeFilter.ColumnRange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class RangeFilterBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int properties;
+
+    private final RoomRange roomRange = new RoomRange(1, 3);
+    private final SquareMetersRange squareMetersRange = new SquareMetersRange(60, 150);
+    private List<Property> postalCodeBucket;
+    private int[] rooms;
+    private int[] squareMeters;
+    private RangeFilter scalar;
+    private RangeFilter vectorized;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        postalCodeBucket = new ArrayList<>(properties);
+        rooms = new int[properties];
+        squareMeters = new int[properties];
+        for (int index = 0; index < properties; index++) {
+            rooms[index] = random.nextInt(6);
+            squareMeters[index] = 20 + random.nextInt(280);
+            postalCodeBucket.add(new Property(index, "Flat " + index, Datasets.postalCode(0), 100_000, rooms[index], squareMeters[index], 1));
+        }
+        scalar = RangeFilter.scalar();
+        vectorized = RangeFilter.vectorized();
+    }
+
+    @Benchmark
+    public long lambdas() {
+        return postalCodeBucket.stream()
+                .filter(roomRange::isInRange)
+                .filter(squareMetersRange::isInRange)
+                .count();
+    }
+
+    @Benchmark
+    public long[] scalar() {
+        return scalar.select(0, properties, ranges());
+    }
+
+    @Benchmark
+    public long[] vectorized() {
+        return vectorized.select(0, properties, ranges());
+    }
+
+    private ColumnRange[] ranges() {
+        return new ColumnRange[]{
+                ColumnRange.of(rooms, roomRange),
+                ColumnRange.of(squareMeters, squareMetersRange)
+        };
+    }
+}
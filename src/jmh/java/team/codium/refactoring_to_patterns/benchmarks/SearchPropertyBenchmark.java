@@ -0,0 +1,60 @@
+package team.codium.refactoring_to_patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import team.codium.refactoring_to_patterns.application.SearchProperty;
+import team.codium.refactoring_to_patterns.domain.Property;
+import team.codium.refactoring_to_patterns.domain.PropertyRepository;
+import team.codium.refactoring_to_patterns.domain.SearchQuery;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedPropertyRepository;
+import team.codium.refactoring_to_patterns.infrastructure.JsonArrayFile;
+import team.codium.refactoring_to_patterns.infrastructure.OffHeapPropertyRepository;
+import team.codium.refactoring_to_patterns.infrastructure.PartitionedScan;
+import team.codium.refactoring_to_patterns.infrastructure.RangeFilter;
+import team.codium.refactoring_to_patterns.infrastructure.StreamingPropertyRepository;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class SearchPropertyBenchmark {
+    private static final int PARALLEL_THRESHOLD = 10_000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int properties;
+
+    @Param({"indexed", "parallel", "offheap", "streaming"})
+    private String repository;
+
+    private Path directory;
+    private SearchProperty searchProperty;
+    private final SearchQuery query = new SearchQuery(Datasets.postalCode(7), 100_000, 400_000, 1, 4, null, null);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Datasets.createDirectory();
+        String propertiesFile = directory.resolve("properties.json").toString();
+        Datasets.writeProperties(directory.resolve("properties.json"), properties);
+        PropertyRepository propertyRepository = switch (repository) {
+            case "indexed" -> new IndexedPropertyRepository(propertiesFile);
+            case "parallel" -> new IndexedPropertyRepository(new JsonArrayFile<>(propertiesFile, Property.class), RangeFilter.best(), PartitionedScan.onCommonPool(PARALLEL_THRESHOLD));
+            case "offheap" -> new OffHeapPropertyRepository(propertiesFile);
+            default -> new StreamingPropertyRepository(propertiesFile);
+        };
+        searchProperty = new SearchProperty(propertyRepository, null, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Datasets.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Property[] search() throws Exception {
+        return searchProperty.search(query);
+    }
+}
@@ -1,35 +1,38 @@
 package team.codium.refactoring_to_patterns.application;
 
-import com.google.gson.Gson;
 import team.codium.refactoring_to_patterns.domain.*;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedAlertRepository;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedUserRepository;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 
 public class AddAlert {
-    private final String alertsFile;
-    private final String usersFile;
+    private static final String VALIDATE_LATENCY = "addAlert.validate";
+    private static final String STORE_LATENCY = "addAlert.store";
+
+    private final AlertRepository alertRepository;
+    private final UserRepository userRepository;
     private final Logger logger;
     private final boolean addDateToLogger;
+    private final Metrics metrics;
 
     public AddAlert(String alertsFile, String usersFile, Logger logger, boolean addDateToLogger) {
-        this.alertsFile = alertsFile;
-        this.usersFile = usersFile;
-        this.logger = logger;
-        this.addDateToLogger = addDateToLogger;
+        this(new IndexedAlertRepository(alertsFile), new IndexedUserRepository(usersFile), logger, addDateToLogger);
     }
 
-    private static String readJSONFileContent(String file) {
-        try {
-            return Files.readString(Paths.get(file));
-        } catch (IOException e) {
-            return "[]";
-        }
+    public AddAlert(AlertRepository alertRepository, UserRepository userRepository, Logger logger, boolean addDateToLogger) {
+        this(alertRepository, userRepository, logger, addDateToLogger, Metrics.NONE);
+    }
+
+    public AddAlert(AlertRepository alertRepository, UserRepository userRepository, Logger logger, boolean addDateToLogger, Metrics metrics) {
+        this.alertRepository = alertRepository;
+        this.userRepository = userRepository;
+        this.logger = logger;
+        this.addDateToLogger = addDateToLogger;
+        this.metrics = metrics;
+        metrics.registerTimers(VALIDATE_LATENCY, STORE_LATENCY);
     }
 
     private static boolean isAlertTypeValid(String alertType) {
@@ -42,6 +45,39 @@ public class AddAlert {
     }
 
     public void execute(AddAlertCommand addAlertCommand) throws InvalidPostalCodeException, InvalidPriceException, InvalidUserIdException, InvalidAlertTypeException {
+        long validateStart = metrics.startTimer();
+        Alert alert = validate(addAlertCommand, userRepository);
+        metrics.stopTimer(VALIDATE_LATENCY, validateStart);
+        long storeStart = metrics.startTimer();
+        alertRepository.add(alert);
+        metrics.stopTimer(STORE_LATENCY, storeStart);
+        log(addAlertCommand);
+    }
+
+    public BatchResult<AddAlertCommand> executeBatch(List<AddAlertCommand> addAlertCommands) {
+        UserRepository users = userRepository.snapshot();
+        ArrayList<Alert> alerts = new ArrayList<>(addAlertCommands.size());
+        ArrayList<AddAlertCommand> validCommands = new ArrayList<>(addAlertCommands.size());
+        ArrayList<BatchFailure<AddAlertCommand>> failures = new ArrayList<>();
+        long validateStart = metrics.startTimer();
+        for (int index = 0; index < addAlertCommands.size(); index++) {
+            AddAlertCommand addAlertCommand = addAlertCommands.get(index);
+            try {
+                alerts.add(validate(addAlertCommand, users));
+                validCommands.add(addAlertCommand);
+            } catch (InvalidPostalCodeException | InvalidPriceException | InvalidUserIdException | InvalidAlertTypeException e) {
+                failures.add(new BatchFailure<>(index, addAlertCommand, e));
+            }
+        }
+        metrics.stopTimer(VALIDATE_LATENCY, validateStart);
+        long storeStart = metrics.startTimer();
+        alertRepository.addAll(alerts);
+        metrics.stopTimer(STORE_LATENCY, storeStart);
+        validCommands.forEach(this::log);
+        return new BatchResult<>(alerts.size(), failures);
+    }
+
+    private static Alert validate(AddAlertCommand addAlertCommand, UserRepository users) throws InvalidPostalCodeException, InvalidPriceException, InvalidUserIdException, InvalidAlertTypeException {
         new PostalCode(addAlertCommand.postalCode());
         new Price(addAlertCommand.minimumPrice());
         new PriceRange(addAlertCommand.minimumPrice(), addAlertCommand.maximumPrice());
@@ -49,41 +85,32 @@ public class AddAlert {
         if (!isAlertTypeValid(addAlertCommand.alertType())) {
             throw new InvalidAlertTypeException("The alert type " + addAlertCommand.alertType() + " does not exist");
         }
-        String usersAsString = readJSONFileContent(usersFile);
-        User[] users = new Gson().fromJson(usersAsString, User[].class);
-        boolean userExists = Arrays.stream(users).anyMatch(user -> user.getId() == addAlertCommand.userId());
+        boolean userExists = users.findById(addAlertCommand.userId()).isPresent();
         if (!userExists) {
             throw new InvalidUserIdException("The user " + addAlertCommand.userId() + " does not exist");
         }
-        ArrayList<Alert> alerts = readAlerts();
-        Alert alert = new Alert(addAlertCommand.userId(), addAlertCommand.alertType(), addAlertCommand.postalCode(), addAlertCommand.minimumPrice(), addAlertCommand.maximumPrice(), addAlertCommand.minimumRooms(), addAlertCommand.maximumRooms(), addAlertCommand.minimumSquareMeters(), addAlertCommand.maximumSquareMeters());
-        alerts.add(alert);
-        try {
-            Files.writeString(Paths.get(alertsFile), new Gson().toJson(alerts));
-        } catch (IOException ignored) {
-        }
+        return new Alert(addAlertCommand.userId(), addAlertCommand.alertType(), addAlertCommand.postalCode(), addAlertCommand.minimumPrice(), addAlertCommand.maximumPrice(), addAlertCommand.minimumRooms(), addAlertCommand.maximumRooms(), addAlertCommand.minimumSquareMeters(), addAlertCommand.maximumSquareMeters());
+    }
 
+    private void log(AddAlertCommand addAlertCommand) {
         if (logger != null) {
-            HashMap<String, Object> data = new HashMap<>() {{
-                put("userId", addAlertCommand.userId());
-                put("alertType", addAlertCommand.alertType());
-                put("postalCode", addAlertCommand.postalCode());
-                put("minimumPrice", addAlertCommand.minimumPrice());
-                put("maximumPrice", addAlertCommand.maximumPrice());
-                put("minimumRooms", addAlertCommand.minimumRooms());
-                put("maximumRooms", addAlertCommand.maximumRooms());
-                put("minimumSquareMeters", addAlertCommand.minimumSquareMeters());
-                put("maximumSquareMeters", addAlertCommand.maximumSquareMeters());
-            }};
-            if (addDateToLogger) {
-                data.put("date", LocalDate.now());
+            LogEvent event = logger.claim();
+            try {
+                event.put("userId", addAlertCommand.userId());
+                event.put("alertType", addAlertCommand.alertType());
+                event.put("postalCode", addAlertCommand.postalCode());
+                event.put("minimumPrice", addAlertCommand.minimumPrice());
+                event.put("maximumPrice", addAlertCommand.maximumPrice());
+                event.put("minimumRooms", addAlertCommand.minimumRooms());
+                event.put("maximumRooms", addAlertCommand.maximumRooms());
+                event.put("minimumSquareMeters", addAlertCommand.minimumSquareMeters());
+                event.put("maximumSquareMeters", addAlertCommand.maximumSquareMeters());
+                if (addDateToLogger) {
+                    event.put("date", LocalDate.now());
+                }
+            } finally {
+                logger.publish(event);
             }
-            logger.log(data);
         }
     }
-
-    private ArrayList<Alert> readAlerts() {
-        String content = readJSONFileContent(alertsFile);
-        return new ArrayList<>(Arrays.asList(new Gson().fromJson(content, Alert[].class)));
-    }
 }
@@ -1,118 +1,148 @@
 package team.codium.refactoring_to_patterns.application;
 
-import com.google.gson.Gson;
 import team.codium.refactoring_to_patterns.domain.*;
-import team.codium.refactoring_to_patterns.infrastructure.EmailSender;
-import team.codium.refactoring_to_patterns.infrastructure.PushSender;
-import team.codium.refactoring_to_patterns.infrastructure.SmsSender;
+import team.codium.refactoring_to_patterns.infrastructure.*;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
 
 public class AddProperty {
-    private final String propertiesFile;
-    private final String usersFile;
-    private final EmailSender emailSender;
-    private final String alertsFile;
-    private final SmsSender smsSender;
-    private final PushSender pushSender;
+    private static final String VALIDATE_LATENCY = "addProperty.validate";
+    private static final String STORE_LATENCY = "addProperty.store";
+    private static final String MATCH_ALERTS_LATENCY = "addProperty.matchAlerts";
+    private static final String DISPATCH_LATENCY = "addProperty.dispatch";
+    private static final String MATCHED_ALERTS = "addProperty.matchedAlerts";
+    private static final String EMAILS = "addProperty.messages.email";
+    private static final String SMS_MESSAGES = "addProperty.messages.sms";
+    private static final String PUSH_MESSAGES = "addProperty.messages.push";
+
+    private final PropertyRepository propertyRepository;
+    private final UserRepository userRepository;
+    private final AlertRepository alertRepository;
+    private final NotificationDispatcher notificationDispatcher;
     private final Logger logger;
     private final boolean addDateToLogger;
+    private final Metrics metrics;
 
     public AddProperty(String propertiesFile, String usersFile, EmailSender emailSender, String alertsFile,
                        SmsSender smsSender, PushSender pushSender, Logger logger, boolean addDateToLogger) {
-        this.propertiesFile = propertiesFile;
-        this.usersFile = usersFile;
-        this.emailSender = emailSender;
-        this.alertsFile = alertsFile;
-        this.smsSender = smsSender;
-        this.pushSender = pushSender;
+        this(new IndexedPropertyRepository(propertiesFile), new IndexedUserRepository(usersFile), new IndexedAlertRepository(alertsFile),
+                new DirectNotificationDispatcher(emailSender, smsSender, pushSender), logger, addDateToLogger);
+    }
+
+    public AddProperty(PropertyRepository propertyRepository, UserRepository userRepository, AlertRepository alertRepository,
+                       NotificationDispatcher notificationDispatcher, Logger logger, boolean addDateToLogger) {
+        this(propertyRepository, userRepository, alertRepository, notificationDispatcher, logger, addDateToLogger, Metrics.NONE);
+    }
+
+    public AddProperty(PropertyRepository propertyRepository, UserRepository userRepository, AlertRepository alertRepository,
+                       NotificationDispatcher notificationDispatcher, Logger logger, boolean addDateToLogger, Metrics metrics) {
+        this.propertyRepository = propertyRepository;
+        this.userRepository = userRepository;
+        this.alertRepository = alertRepository;
+        this.notificationDispatcher = notificationDispatcher;
         this.logger = logger;
         this.addDateToLogger = addDateToLogger;
+        this.metrics = metrics;
+        metrics.registerTimers(VALIDATE_LATENCY, STORE_LATENCY, MATCH_ALERTS_LATENCY, DISPATCH_LATENCY);
     }
 
-    private static boolean hasToSendTheAlert(Property property, Alert alert) {
-        return alert.postalCode().equals(property.getPostalCode()) &&
-                (alert.minimumPrice() == null || alert.minimumPrice() <= property.getPrice()) &&
-                (alert.maximumPrice() == null || alert.maximumPrice() >= property.getPrice()) &&
-                (alert.minimumRooms() == null || alert.minimumRooms() <= property.getNumberOfRooms()) &&
-                (alert.maximumRooms() == null || alert.maximumRooms() >= property.getNumberOfRooms()) &&
-                (alert.minimumSquareMeters() == null || alert.minimumSquareMeters() <= property.getSquareMeters()) &&
-                (alert.maximumSquareMeters() == null || alert.maximumSquareMeters() >= property.getSquareMeters());
+    public void execute(AddPropertyCommand addPropertyCommand) throws InvalidPostalCodeException, InvalidPriceException, InvalidUserIdException {
+        long validateStart = metrics.startTimer();
+        Property property = validate(addPropertyCommand, userRepository);
+        metrics.stopTimer(VALIDATE_LATENCY, validateStart);
+        long storeStart = metrics.startTimer();
+        propertyRepository.add(property);
+        metrics.stopTimer(STORE_LATENCY, storeStart);
+        notifyAlerts(property);
+        log(property);
     }
 
-    private static String readJSONFileContent(String file) {
-        try {
-            return Files.readString(Paths.get(file));
-        } catch (IOException e) {
-            return "[]";
+    public BatchResult<AddPropertyCommand> executeBatch(List<AddPropertyCommand> addPropertyCommands) {
+        UserRepository users = userRepository.snapshot();
+        ArrayList<Property> properties = new ArrayList<>(addPropertyCommands.size());
+        ArrayList<BatchFailure<AddPropertyCommand>> failures = new ArrayList<>();
+        long validateStart = metrics.startTimer();
+        for (int index = 0; index < addPropertyCommands.size(); index++) {
+            AddPropertyCommand addPropertyCommand = addPropertyCommands.get(index);
+            try {
+                properties.add(validate(addPropertyCommand, users));
+            } catch (InvalidPostalCodeException | InvalidPriceException | InvalidUserIdException e) {
+                failures.add(new BatchFailure<>(index, addPropertyCommand, e));
+            }
+        }
+        metrics.stopTimer(VALIDATE_LATENCY, validateStart);
+        long storeStart = metrics.startTimer();
+        propertyRepository.addAll(properties);
+        metrics.stopTimer(STORE_LATENCY, storeStart);
+        long matchStart = metrics.startTimer();
+        List<List<Alert>> matchingAlerts = alertRepository.findMatchingAll(properties);
+        metrics.stopTimer(MATCH_ALERTS_LATENCY, matchStart);
+        for (int index = 0; index < properties.size(); index++) {
+            notifyAlerts(properties.get(index), matchingAlerts.get(index), users);
+            log(properties.get(index));
         }
+        return new BatchResult<>(properties.size(), failures);
     }
 
-    public void execute(AddPropertyCommand addPropertyCommand) throws InvalidPostalCodeException, InvalidPriceException, InvalidUserIdException {
-        Property property;
+    private static Property validate(AddPropertyCommand addPropertyCommand, UserRepository users) throws InvalidPostalCodeException, InvalidPriceException, InvalidUserIdException {
         new PostalCode(addPropertyCommand.postalCode());
         new Price(addPropertyCommand.price());
 
-        String usersAsString = readJSONFileContent(usersFile);
-        User[] users = new Gson().fromJson(usersAsString, User[].class);
-        Optional<User> user = Arrays.stream(users).filter(u -> u.getId() == addPropertyCommand.ownerId()).findFirst();
+        Optional<User> user = users.findById(addPropertyCommand.ownerId());
         if (!user.isPresent()) {
             throw new InvalidUserIdException("The owner " + addPropertyCommand.ownerId() + " does not exist");
         }
-        String propertiesAsString = readJSONFileContent(propertiesFile);
-        ArrayList<Property> allProperties =
-                new ArrayList<>(Arrays.asList(new Gson().fromJson(propertiesAsString, Property[].class)));
-        property = new Property(addPropertyCommand.id(), addPropertyCommand.description(), addPropertyCommand.postalCode(), addPropertyCommand.price(), addPropertyCommand.numberOfRooms(), addPropertyCommand.squareMeters(), addPropertyCommand.ownerId());
-        allProperties.add(property);
-        writePropertiesFile(allProperties);
-        ArrayList<Alert> alerts =
-                new ArrayList<>(Arrays.asList(new Gson().fromJson(readJSONFileContent(alertsFile), Alert[].class)));
-        for (Alert alert : alerts) {
-            if (hasToSendTheAlert(property, alert)) {
-                Optional<User> userToAlert = Arrays.stream(users).filter(u -> u.getId() == alert.userId()).findFirst();
-                if (alert.alertType().toUpperCase().equals(AlertType.EMAIL.name())) {
-                    emailSender.sendEmail(new Email("noreply@codium.team", userToAlert.get().getEmail(), "There is a new property at " + property.getPostalCode(), "More information at https://properties.codium.team/" + property.getId()));
-                }
-                if (alert.alertType().toUpperCase().equals(AlertType.SMS.name())) {
-                    smsSender.sendSMSAlert(new SmsMessage(userToAlert.get().getPhoneNumber(), "There is a new property at " + property.getPostalCode() + ". More information at https://properties.codium.team/" + property.getId()));
-                }
-                if (alert.alertType().toUpperCase().equals(AlertType.PUSH.name())) {
-                    pushSender.sendPushNotification(new PushMessage(userToAlert.get().getPhoneNumber(), "There is a new property at " + property.getPostalCode() + ". More information at https://properties.codium.team/" + property.getId()));
-                }
-            }
-        }
+        return new Property(addPropertyCommand.id(), addPropertyCommand.description(), addPropertyCommand.postalCode(), addPropertyCommand.price(), addPropertyCommand.numberOfRooms(), addPropertyCommand.squareMeters(), addPropertyCommand.ownerId());
+    }
 
+    private void notifyAlerts(Property property) {
+        long matchStart = metrics.startTimer();
+        List<Alert> matchingAlerts = alertRepository.findMatching(property);
+        metrics.stopTimer(MATCH_ALERTS_LATENCY, matchStart);
+        notifyAlerts(property, matchingAlerts, userRepository);
+    }
 
-        if (logger != null) {
-            HashMap<String, Object> data = new HashMap<>() {{
-                put("id", property.getId());
-                put("description", property.getDescription());
-                put("postalCode", property.getPostalCode());
-                put("price", property.getPrice());
-                put("numberOfRooms", property.getNumberOfRooms());
-                put("squareMeters", property.getSquareMeters());
-                put("ownerId", property.getOwnerId());
-            }};
-            if (addDateToLogger) {
-                data.put("date", LocalDate.now());
+    private void notifyAlerts(Property property, List<Alert> matchingAlerts, UserRepository users) {
+        metrics.increment(MATCHED_ALERTS, matchingAlerts.size());
+        long dispatchStart = metrics.startTimer();
+        for (Alert alert : matchingAlerts) {
+            Optional<User> userToAlert = users.findById(alert.userId());
+            if (alert.alertType().toUpperCase().equals(AlertType.EMAIL.name())) {
+                notificationDispatcher.dispatch(alert.userId(), property.getId(), new Email("noreply@codium.team", userToAlert.get().getEmail(), "There is a new property at " + property.getPostalCode(), "More information at https://properties.codium.team/" + property.getId()));
+                metrics.increment(EMAILS, 1);
+            }
+            if (alert.alertType().toUpperCase().equals(AlertType.SMS.name())) {
+                notificationDispatcher.dispatch(alert.userId(), property.getId(), new SmsMessage(userToAlert.get().getPhoneNumber(), "There is a new property at " + property.getPostalCode() + ". More information at https://properties.codium.team/" + property.getId()));
+                metrics.increment(SMS_MESSAGES, 1);
+            }
+            if (alert.alertType().toUpperCase().equals(AlertType.PUSH.name())) {
+                notificationDispatcher.dispatch(alert.userId(), property.getId(), new PushMessage(userToAlert.get().getPhoneNumber(), "There is a new property at " + property.getPostalCode() + ". More information at https://properties.codium.team/" + property.getId()));
+                metrics.increment(PUSH_MESSAGES, 1);
             }
-            logger.log(data);
         }
-
+        metrics.stopTimer(DISPATCH_LATENCY, dispatchStart);
     }
 
-    private void writePropertiesFile(ArrayList<Property> allProperties) {
-        try {
-            Files.writeString(Paths.get(propertiesFile), new Gson().toJson(allProperties));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private void log(Property property) {
+        if (logger != null) {
+            LogEvent event = logger.claim();
+            try {
+                event.put("id", property.getId());
+                event.put("description", property.getDescription());
+                event.put("postalCode", property.getPostalCode());
+                event.put("price", property.getPrice());
+                event.put("numberOfRooms", property.getNumberOfRooms());
+                event.put("squareMeters", property.getSquareMeters());
+                event.put("ownerId", property.getOwnerId());
+                if (addDateToLogger) {
+                    event.put("date", LocalDate.now());
+                }
+            } finally {
+                logger.publish(event);
+            }
         }
     }
 }
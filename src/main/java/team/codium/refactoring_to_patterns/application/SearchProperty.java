@@ -1,65 +1,114 @@
 package team.codium.refactoring_to_patterns.application;
 
-import com.google.gson.Gson;
 import team.codium.refactoring_to_patterns.domain.*;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedPropertyRepository;
+import team.codium.refactoring_to_patterns.infrastructure.JsonArrayFile;
+import team.codium.refactoring_to_patterns.infrastructure.PartitionedScan;
+import team.codium.refactoring_to_patterns.infrastructure.RangeFilter;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
 
 final public class SearchProperty {
-    private final String propertiesFile;
+    private static final String SEARCH_LATENCY = "searchProperty.search";
+    private static final String SEARCHES = "searchProperty.searches";
+    private static final String HITS = "searchProperty.hits";
+
+    private final PropertySearch propertySearch;
     private final Logger logger;
     private final boolean addDateToLogger;
+    private final Metrics metrics;
 
     public SearchProperty(String propertiesFile, Logger logger, boolean addDateToLogger) {
-        this.propertiesFile = propertiesFile;
+        this(new IndexedPropertyRepository(propertiesFile), logger, addDateToLogger);
+    }
+
+    public SearchProperty(String propertiesFile, Logger logger, boolean addDateToLogger, PartitionedScan partitionedScan) {
+        this(new IndexedPropertyRepository(new JsonArrayFile<>(propertiesFile, Property.class), RangeFilter.best(), partitionedScan), logger, addDateToLogger);
+    }
+
+    public SearchProperty(PropertySearch propertySearch, Logger logger, boolean addDateToLogger) {
+        this(propertySearch, logger, addDateToLogger, Metrics.NONE);
+    }
+
+    public SearchProperty(PropertySearch propertySearch, Logger logger, boolean addDateToLogger, Metrics metrics) {
+        this.propertySearch = propertySearch;
         this.logger = logger;
         this.addDateToLogger = addDateToLogger;
+        this.metrics = metrics;
+        metrics.registerTimers(SEARCH_LATENCY);
     }
 
     public Property[] search(SearchQuery searchQuery) throws InvalidPostalCodeException, InvalidPriceException {
-        Property[] properties;
-        new PostalCode(searchQuery.postalCode());
+        try (Stream<Property> properties = stream(searchQuery)) {
+            return properties.toArray(Property[]::new);
+        }
+    }
+
+    public Stream<Property> stream(SearchQuery searchQuery) throws InvalidPostalCodeException, InvalidPriceException {
+        Stream<Property> properties;
+        long searchStart = metrics.startTimer();
+        PostalCodeSelection postalCodes = searchQuery.postalCodes().validate();
         new Price(searchQuery.minimumPrice());
         PriceRange priceRange = new PriceRange(searchQuery.minimumPrice(), searchQuery.maximumPrice());
         RoomRange roomRange = new RoomRange(searchQuery.minimumRooms(), searchQuery.maximumRooms());
         SquareMetersRange squareMetersRange = new SquareMetersRange(searchQuery.minimumSquareMeters(), searchQuery.maximumSquareMeters());
-        String propertiesAsString = readPropertiesFile();
-        Property[] allProperties = new Gson().fromJson(propertiesAsString, Property[].class);
-        properties = Arrays.stream(allProperties)
-                .filter(property -> property.getPostalCode().equals(searchQuery.postalCode()))
-                .filter(property -> priceRange.isInRange(property))
-                .filter(property -> roomRange.isInRange(property))
-                .filter(property -> squareMetersRange.isInRange(property))
-                .toArray(Property[]::new);
-
+        properties = page(postalCodes.isSinglePostalCode()
+                ? propertySearch.find(postalCodes.postalCodes().get(0), priceRange, roomRange, squareMetersRange)
+                : propertySearch.find(postalCodes, priceRange, roomRange, squareMetersRange), searchQuery);
+        metrics.increment(SEARCHES, 1);
+        if (metrics.isEnabled()) {
+            // The properties are found lazily, so the search only ends once the caller has read the page and closed it.
+            properties = properties.peek(property -> metrics.increment(HITS, 1))
+                    .onClose(() -> metrics.stopTimer(SEARCH_LATENCY, searchStart));
+        }
 
         if (logger != null) {
-            HashMap<String, Object> data = new HashMap<>() {{
-                put("postalCode", searchQuery.postalCode());
-                put("minimumPrice", searchQuery.minimumPrice());
-                put("maximumPrice", searchQuery.maximumPrice());
-            }};
-            if (addDateToLogger) {
-                data.put("date", LocalDate.now());
+            LogEvent event = logger.claim();
+            try {
+                event.put("postalCode", postalCodes.toString());
+                event.put("minimumPrice", searchQuery.minimumPrice());
+                event.put("maximumPrice", searchQuery.maximumPrice());
+                if (addDateToLogger) {
+                    event.put("date", LocalDate.now());
+                }
+            } finally {
+                logger.publish(event);
             }
-            logger.log(data);
         }
         return properties;
     }
 
-
-
-
-    private String readPropertiesFile() {
-        try {
-            return Files.readString(Paths.get(propertiesFile));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private static Stream<Property> page(Stream<Property> properties, SearchQuery searchQuery) {
+        if (searchQuery.sortKey() == null) {
+            Stream<Property> page = properties.skip(searchQuery.offset());
+            return searchQuery.limit() == null ? page : page.limit(searchQuery.limit());
+        }
+        Comparator<Property> order = searchQuery.sortKey().comparator(searchQuery.sortDirection());
+        if (searchQuery.limit() == null) {
+            return properties.sorted(order).skip(searchQuery.offset());
+        }
+        if (searchQuery.limit() == 0) {
+            properties.close();
+            return Stream.empty();
+        }
+        int pageEnd = (int) Math.min(Integer.MAX_VALUE - 1, (long) searchQuery.offset() + searchQuery.limit());
+        PriorityQueue<Property> firstInOrder = new PriorityQueue<>(Math.min(pageEnd, 1024) + 1, order.reversed());
+        try (properties) {
+            properties.forEach(property -> {
+                if (firstInOrder.size() < pageEnd) {
+                    firstInOrder.add(property);
+                } else if (order.compare(property, firstInOrder.peek()) < 0) {
+                    firstInOrder.poll();
+                    firstInOrder.add(property);
+                }
+            });
         }
+        Property[] page = firstInOrder.toArray(Property[]::new);
+        Arrays.sort(page, order);
+        return Arrays.stream(page, Math.min(searchQuery.offset(), page.length), page.length);
     }
 }
@@ -1,6 +1,29 @@
 package team.codium.refactoring_to_patterns.domain;
 
-public record Alert(int userId, String alertType, String postalCode, Integer minimumPrice, Integer maximumPrice,
-                    Integer minimumRooms, Integer maximumRooms, Integer minimumSquareMeters,
+// The postal code id is always derived from the postal code, whatever the canonical constructor is given: ids only mean
+// something inside this process, so a stored alert never carries one.
+public record Alert(int userId, String alertType, String postalCode, int postalCodeId, Integer minimumPrice,
+                    Integer maximumPrice, Integer minimumRooms, Integer maximumRooms, Integer minimumSquareMeters,
                     Integer maximumSquareMeters) {
+
+    public Alert {
+        postalCodeId = PostalCodeDictionary.encode(postalCode);
+        postalCode = PostalCodeDictionary.decode(postalCodeId);
+    }
+
+    public Alert(int userId, String alertType, String postalCode, Integer minimumPrice, Integer maximumPrice,
+                 Integer minimumRooms, Integer maximumRooms, Integer minimumSquareMeters, Integer maximumSquareMeters) {
+        this(userId, alertType, postalCode, PostalCodeDictionary.NOT_FOUND, minimumPrice, maximumPrice, minimumRooms,
+                maximumRooms, minimumSquareMeters, maximumSquareMeters);
+    }
+
+    public boolean matches(Property property) {
+        return postalCodeId == property.getPostalCodeId() &&
+                (minimumPrice == null || minimumPrice <= property.getPrice()) &&
+                (maximumPrice == null || maximumPrice >= property.getPrice()) &&
+                (minimumRooms == null || minimumRooms <= property.getNumberOfRooms()) &&
+                (maximumRooms == null || maximumRooms >= property.getNumberOfRooms()) &&
+                (minimumSquareMeters == null || minimumSquareMeters <= property.getSquareMeters()) &&
+                (maximumSquareMeters == null || maximumSquareMeters >= property.getSquareMeters());
+    }
 }
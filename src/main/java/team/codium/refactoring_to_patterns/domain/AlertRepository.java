@@ -0,0 +1,21 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public interface AlertRepository {
+    List<Alert> findMatching(Property property);
+
+    // The alerts matching each property, in the order the properties were given.
+    default List<List<Alert>> findMatchingAll(List<Property> properties) {
+        List<List<Alert>> matching = new ArrayList<>(properties.size());
+        for (Property property : properties) {
+            matching.add(findMatching(property));
+        }
+        return matching;
+    }
+
+    void add(Alert alert);
+
+    void addAll(List<Alert> alerts);
+}
@@ -0,0 +1,4 @@
+package team.codium.refactoring_to_patterns.domain;
+
+public record BatchFailure<C>(int index, C command, Exception error) {
+}
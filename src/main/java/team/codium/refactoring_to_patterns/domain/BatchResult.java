@@ -0,0 +1,9 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.List;
+
+public record BatchResult<C>(int succeeded, List<BatchFailure<C>> failures) {
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+}
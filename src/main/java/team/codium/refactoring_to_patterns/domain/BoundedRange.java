@@ -0,0 +1,16 @@
+package team.codium.refactoring_to_patterns.domain;
+
+// A missing minimum or maximum leaves that side of the range open, which the bounds express as the lowest and highest int.
+public interface BoundedRange {
+    int lowerBound();
+
+    int upperBound();
+
+    static int lowerBound(Integer minimum) {
+        return minimum == null ? Integer.MIN_VALUE : minimum;
+    }
+
+    static int upperBound(Integer maximum) {
+        return maximum == null ? Integer.MAX_VALUE : maximum;
+    }
+}
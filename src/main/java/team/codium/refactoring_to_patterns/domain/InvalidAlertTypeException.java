@@ -1,6 +1,8 @@
 package team.codium.refactoring_to_patterns.domain;
 
 public class InvalidAlertTypeException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public InvalidAlertTypeException(String message) {
         super(message);
     }
@@ -1,6 +1,8 @@
 package team.codium.refactoring_to_patterns.domain;
 
 public class InvalidPostalCodeException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public InvalidPostalCodeException(String exceptionMessage) {
         super(exceptionMessage);
     }
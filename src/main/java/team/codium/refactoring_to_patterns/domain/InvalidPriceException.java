@@ -1,6 +1,8 @@
 package team.codium.refactoring_to_patterns.domain;
 
 public class InvalidPriceException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public InvalidPriceException(String message) {
         super(message);
     }
@@ -1,6 +1,8 @@
 package team.codium.refactoring_to_patterns.domain;
 
 public class InvalidUserIdException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public InvalidUserIdException(String msg) {
         super(msg);
     }
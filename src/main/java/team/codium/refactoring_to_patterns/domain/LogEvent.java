@@ -0,0 +1,135 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class LogEvent {
+    private static final int INITIAL_FIELDS = 16;
+
+    private String[] keys;
+    private int[] numbers;
+    private Object[] objects;
+    private boolean[] isNumber;
+    private int size;
+
+    public LogEvent() {
+        this(INITIAL_FIELDS);
+    }
+
+    private LogEvent(int initialFields) {
+        keys = new String[initialFields];
+        numbers = new int[initialFields];
+        objects = new Object[initialFields];
+        isNumber = new boolean[initialFields];
+    }
+
+    // An event that is used once and then handed over as a map fills the map directly, so it costs what building the map
+    // by hand did instead of a set of field arrays plus the map they are copied into.
+    public static LogEvent intoMap() {
+        return new MapEvent();
+    }
+
+    public LogEvent put(String key, int value) {
+        int field = nextField(key);
+        numbers[field] = value;
+        isNumber[field] = true;
+        return this;
+    }
+
+    public LogEvent put(String key, Object value) {
+        int field = nextField(key);
+        objects[field] = value;
+        isNumber[field] = false;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private Object value(int field) {
+        return isNumber[field] ? Integer.valueOf(numbers[field]) : objects[field];
+    }
+
+    // Hands each field to the visitor with int values unboxed, so a sink can consume the event without building a map.
+    public void forEachField(FieldVisitor visitor) {
+        for (int field = 0; field < size; field++) {
+            if (isNumber[field]) {
+                visitor.field(keys[field], numbers[field]);
+            } else {
+                visitor.field(keys[field], objects[field]);
+            }
+        }
+    }
+
+    public HashMap<String, Object> toMap() {
+        HashMap<String, Object> data = new HashMap<>();
+        for (int field = 0; field < size; field++) {
+            data.put(keys[field], value(field));
+        }
+        return data;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+    }
+
+    private int nextField(String key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            numbers = Arrays.copyOf(numbers, size * 2);
+            objects = Arrays.copyOf(objects, size * 2);
+            isNumber = Arrays.copyOf(isNumber, size * 2);
+        }
+        keys[size] = key;
+        return size++;
+    }
+
+    private static final class MapEvent extends LogEvent {
+        private final HashMap<String, Object> data = new HashMap<>();
+
+        MapEvent() {
+            super(0);
+        }
+
+        @Override
+        public LogEvent put(String key, int value) {
+            data.put(key, value);
+            return this;
+        }
+
+        @Override
+        public LogEvent put(String key, Object value) {
+            data.put(key, value);
+            return this;
+        }
+
+        @Override
+        public int size() {
+            return data.size();
+        }
+
+        @Override
+        public void forEachField(FieldVisitor visitor) {
+            data.forEach(visitor::field);
+        }
+
+        @Override
+        public HashMap<String, Object> toMap() {
+            return data;
+        }
+
+        @Override
+        public void clear() {
+            data.clear();
+        }
+    }
+
+    public interface FieldVisitor {
+        void field(String key, int value);
+
+        void field(String key, Object value);
+    }
+}
@@ -7,4 +7,12 @@ public interface Logger {
     void log(HashMap<String, Object> data);
 
     ArrayList<HashMap<String, Object>> getLoggedData();
+
+    default LogEvent claim() {
+        return LogEvent.intoMap();
+    }
+
+    default void publish(LogEvent event) {
+        log(event.toMap());
+    }
 }
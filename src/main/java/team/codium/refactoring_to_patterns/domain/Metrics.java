@@ -0,0 +1,39 @@
+package team.codium.refactoring_to_patterns.domain;
+
+public interface Metrics {
+    Metrics NONE = new Metrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordLatency(String name, long nanos) {
+        }
+
+        @Override
+        public void increment(String name, long amount) {
+        }
+    };
+
+    boolean isEnabled();
+
+    void recordLatency(String name, long nanos);
+
+    void increment(String name, long amount);
+
+    // Instrumented code names its timers when it is built, so a timer that has not run yet still reads as empty.
+    default void registerTimers(String... names) {
+    }
+
+    // Disabled metrics never read the clock, so instrumented code pays one virtual call per phase.
+    default long startTimer() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    default void stopTimer(String name, long start) {
+        if (isEnabled()) {
+            recordLatency(name, System.nanoTime() - start);
+        }
+    }
+}
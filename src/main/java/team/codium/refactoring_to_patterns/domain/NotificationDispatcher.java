@@ -0,0 +1,23 @@
+package team.codium.refactoring_to_patterns.domain;
+
+public interface NotificationDispatcher {
+    void dispatch(Email email);
+
+    void dispatch(SmsMessage smsMessage);
+
+    void dispatch(PushMessage pushMessage);
+
+    // The alert a message comes from names the user and the property it is about, which is what lets a dispatcher tell
+    // repeated notifications apart; dispatchers that do not care just send the message.
+    default void dispatch(int userId, int propertyId, Email email) {
+        dispatch(email);
+    }
+
+    default void dispatch(int userId, int propertyId, SmsMessage smsMessage) {
+        dispatch(smsMessage);
+    }
+
+    default void dispatch(int userId, int propertyId, PushMessage pushMessage) {
+        dispatch(pushMessage);
+    }
+}
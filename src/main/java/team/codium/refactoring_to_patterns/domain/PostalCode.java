@@ -1,11 +1,24 @@
 package team.codium.refactoring_to_patterns.domain;
 
-import java.util.regex.Pattern;
-
 public class PostalCode {
+    private static final int LENGTH = 5;
+
     public PostalCode(String postalCode) throws InvalidPostalCodeException {
-        if (!Pattern.matches("^\\d{5}$", postalCode)) {
+        if (!isValid(postalCode)) {
             throw new InvalidPostalCodeException(postalCode + " is not a valid postal code");
         }
     }
+
+    public static boolean isValid(String postalCode) {
+        if (postalCode == null || postalCode.length() != LENGTH) {
+            return false;
+        }
+        for (int index = 0; index < LENGTH; index++) {
+            char digit = postalCode.charAt(index);
+            if (digit < '0' || digit > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
 }
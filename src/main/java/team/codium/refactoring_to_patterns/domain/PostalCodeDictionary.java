@@ -0,0 +1,49 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Gives every distinct postal code a dense int code and a single shared String, so listings compare and index postal
+// codes as ints and do not each keep their own copy. Codes are only handed out for stored or validated postal codes,
+// which bounds the dictionary by the number of distinct five-digit codes.
+public final class PostalCodeDictionary {
+    public static final int NOT_FOUND = -1;
+
+    private static final ConcurrentHashMap<String, Integer> CODES = new ConcurrentHashMap<>();
+    private static volatile String[] postalCodes = new String[1024];
+    private static int size;
+
+    private PostalCodeDictionary() {
+    }
+
+    public static int encode(String postalCode) {
+        Integer code = CODES.get(postalCode);
+        return code == null ? add(postalCode) : code;
+    }
+
+    public static int find(String postalCode) {
+        Integer code = CODES.get(postalCode);
+        return code == null ? NOT_FOUND : code;
+    }
+
+    public static String decode(int code) {
+        return postalCodes[code];
+    }
+
+    public static String intern(String postalCode) {
+        return decode(encode(postalCode));
+    }
+
+    private static synchronized int add(String postalCode) {
+        Integer existingCode = CODES.get(postalCode);
+        if (existingCode != null) {
+            return existingCode;
+        }
+        if (size == postalCodes.length) {
+            postalCodes = Arrays.copyOf(postalCodes, size * 2);
+        }
+        postalCodes[size] = postalCode;
+        CODES.put(postalCode, size);
+        return size++;
+    }
+}
@@ -0,0 +1,123 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// The postal codes a search covers: a set of codes or a prefix. As text it is written as a single code ("04600"), a comma
+// separated list ("04600,04601") or a prefix ending in a wildcard ("046*"). A selection is built without checking its
+// codes, so queries can carry it, and is validated once before a search uses it.
+public final class PostalCodeSelection {
+    private static final char WILDCARD = '*';
+    private static final String SEPARATOR = ",";
+    private static final int POSTAL_CODE_LENGTH = 5;
+
+    private final String prefix;
+    private final List<String> postalCodes;
+
+    private PostalCodeSelection(String prefix, List<String> postalCodes) {
+        this.prefix = prefix;
+        this.postalCodes = postalCodes;
+    }
+
+    public static PostalCodeSelection of(String selection) {
+        if (selection != null && !selection.isEmpty() && selection.charAt(selection.length() - 1) == WILDCARD) {
+            return withPrefix(selection.substring(0, selection.length() - 1));
+        }
+        if (selection == null || !selection.contains(SEPARATOR)) {
+            return new PostalCodeSelection(null, Collections.singletonList(selection));
+        }
+        return of(Arrays.asList(selection.split(SEPARATOR, -1)));
+    }
+
+    public static PostalCodeSelection of(Collection<String> postalCodes) {
+        return new PostalCodeSelection(null, Collections.unmodifiableList(postalCodes.stream()
+                .distinct()
+                .sorted(Comparator.nullsFirst(Comparator.naturalOrder()))
+                .collect(Collectors.toList())));
+    }
+
+    public static PostalCodeSelection withPrefix(String prefix) {
+        return new PostalCodeSelection(prefix, List.of());
+    }
+
+    public static PostalCodeSelection parse(String selection) throws InvalidPostalCodeException {
+        return of(selection).validate();
+    }
+
+    // A prefix needs at least one digit: an empty one would stand for every postal code there is.
+    public PostalCodeSelection validate() throws InvalidPostalCodeException {
+        if (prefix != null) {
+            if (prefix.isEmpty() || prefix.length() > POSTAL_CODE_LENGTH || !prefix.chars().allMatch(digit -> digit >= '0' && digit <= '9')) {
+                throw new InvalidPostalCodeException(this + " is not a valid postal code prefix");
+            }
+            return this;
+        }
+        if (postalCodes.isEmpty()) {
+            throw new InvalidPostalCodeException("There is no postal code to search in");
+        }
+        for (String postalCode : postalCodes) {
+            new PostalCode(postalCode);
+        }
+        return this;
+    }
+
+    public boolean isPrefix() {
+        return prefix != null;
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    public boolean isSinglePostalCode() {
+        return prefix == null && postalCodes.size() == 1;
+    }
+
+    public List<String> postalCodes() {
+        return postalCodes;
+    }
+
+    public boolean matches(String postalCode) {
+        if (prefix != null) {
+            return postalCode.length() == POSTAL_CODE_LENGTH && postalCode.startsWith(prefix);
+        }
+        return Collections.binarySearch(postalCodes, postalCode) >= 0;
+    }
+
+    // Every postal code the selection could match, in ascending order; a prefix expands to all of its completions.
+    public Stream<String> expand() {
+        if (prefix == null) {
+            return postalCodes.stream();
+        }
+        int missingDigits = POSTAL_CODE_LENGTH - prefix.length();
+        int completions = (int) Math.pow(10, missingDigits);
+        return IntStream.range(0, completions).mapToObj(suffix -> {
+            char[] postalCode = Arrays.copyOf(prefix.toCharArray(), POSTAL_CODE_LENGTH);
+            for (int position = POSTAL_CODE_LENGTH - 1, rest = suffix; position >= prefix.length(); position--, rest /= 10) {
+                postalCode[position] = (char) ('0' + rest % 10);
+            }
+            return new String(postalCode);
+        });
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PostalCodeSelection selection && toString().equals(selection.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return prefix != null ? prefix + WILDCARD : postalCodes.stream().map(String::valueOf).collect(Collectors.joining(SEPARATOR));
+    }
+}
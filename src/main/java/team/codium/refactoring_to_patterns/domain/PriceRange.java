@@ -1,6 +1,6 @@
 package team.codium.refactoring_to_patterns.domain;
 
-public class PriceRange {
+public class PriceRange implements BoundedRange {
     private Integer minimumPrice;
     private Integer maximumPrice;
 
@@ -13,6 +13,24 @@ public class PriceRange {
         this.minimumPrice = minimumPrice;
     }
 
+    public Integer getMinimumPrice() {
+        return minimumPrice;
+    }
+
+    public Integer getMaximumPrice() {
+        return maximumPrice;
+    }
+
+    @Override
+    public int lowerBound() {
+        return BoundedRange.lowerBound(minimumPrice);
+    }
+
+    @Override
+    public int upperBound() {
+        return BoundedRange.upperBound(maximumPrice);
+    }
+
     public boolean isInRange(Property property) {
         return (minimumPrice == null || property.getPrice() >= minimumPrice) &&
                 (maximumPrice == null || property.getPrice() <= maximumPrice);
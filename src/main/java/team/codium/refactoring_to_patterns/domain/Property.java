@@ -4,6 +4,7 @@ public class Property {
     private final int id;
     private final String description;
     private final String postalCode;
+    private final transient int postalCodeId;
     private final int price;
     private final int numberOfRooms;
     private final int squareMeters;
@@ -12,7 +13,8 @@ public class Property {
     public Property(int id, String description, String postalCode, int price, int numberOfRooms, int squareMeters, int ownerId) {
         this.id = id;
         this.description = description;
-        this.postalCode = postalCode;
+        this.postalCodeId = PostalCodeDictionary.encode(postalCode);
+        this.postalCode = PostalCodeDictionary.decode(postalCodeId);
         this.price = price;
         this.numberOfRooms = numberOfRooms;
         this.squareMeters = squareMeters;
@@ -31,6 +33,10 @@ public class Property {
         return postalCode;
     }
 
+    public int getPostalCodeId() {
+        return postalCodeId;
+    }
+
     public int getPrice() {
         return price;
     }
@@ -0,0 +1,9 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.List;
+
+public interface PropertyRepository extends PropertySearch {
+    void add(Property property);
+
+    void addAll(List<Property> properties);
+}
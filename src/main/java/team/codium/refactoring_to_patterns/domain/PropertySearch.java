@@ -0,0 +1,12 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.stream.Stream;
+
+public interface PropertySearch {
+    Stream<Property> find(String postalCode, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange);
+
+    // Searches with a postal code index override this to visit only the postal codes they actually hold.
+    default Stream<Property> find(PostalCodeSelection postalCodes, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        return postalCodes.expand().flatMap(postalCode -> find(postalCode, priceRange, roomRange, squareMetersRange));
+    }
+}
@@ -1,6 +1,6 @@
 package team.codium.refactoring_to_patterns.domain;
 
-public class RoomRange {
+public class RoomRange implements BoundedRange {
     private Integer minimumRooms;
     private Integer maximumRooms;
     public RoomRange(Integer minimumRooms, Integer maximumRooms) {
@@ -8,6 +8,24 @@ public class RoomRange {
         this.maximumRooms = maximumRooms;
     }
 
+    public Integer getMinimumRooms() {
+        return minimumRooms;
+    }
+
+    public Integer getMaximumRooms() {
+        return maximumRooms;
+    }
+
+    @Override
+    public int lowerBound() {
+        return BoundedRange.lowerBound(minimumRooms);
+    }
+
+    @Override
+    public int upperBound() {
+        return BoundedRange.upperBound(maximumRooms);
+    }
+
     public boolean isInRange(Property property) {
         return (minimumRooms == null || property.getNumberOfRooms() >= minimumRooms) &&
                 (maximumRooms == null || property.getNumberOfRooms() <= maximumRooms);
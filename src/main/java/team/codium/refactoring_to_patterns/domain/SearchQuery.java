@@ -1,5 +1,53 @@
 package team.codium.refactoring_to_patterns.domain;
 
-public record SearchQuery(String postalCode, Integer minimumPrice, Integer maximumPrice, Integer minimumRooms,
-                          Integer maximumRooms, Integer minimumSquareMeters, Integer maximumSquareMeters) {
-}
\ No newline at end of file
+import java.util.Collection;
+
+public record SearchQuery(PostalCodeSelection postalCodes, Integer minimumPrice, Integer maximumPrice, Integer minimumRooms,
+                          Integer maximumRooms, Integer minimumSquareMeters, Integer maximumSquareMeters,
+                          SortKey sortKey, SortDirection sortDirection, int offset, Integer limit) {
+    public SearchQuery {
+        if (postalCodes == null) {
+            throw new IllegalArgumentException("The postal codes to search in are required");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset cannot be negative");
+        }
+        if (limit != null && limit < 0) {
+            throw new IllegalArgumentException("The limit cannot be negative");
+        }
+    }
+
+    public SearchQuery(String postalCode, Integer minimumPrice, Integer maximumPrice, Integer minimumRooms,
+                       Integer maximumRooms, Integer minimumSquareMeters, Integer maximumSquareMeters) {
+        this(PostalCodeSelection.of(postalCode), minimumPrice, maximumPrice, minimumRooms, maximumRooms, minimumSquareMeters,
+                maximumSquareMeters, null, SortDirection.ASCENDING, 0, null);
+    }
+
+    // The selection as text, as queries carried it before they held a selection: the postal code itself for a single code.
+    public String postalCode() {
+        return postalCodes.toString();
+    }
+
+    public SearchQuery inPostalCodes(Collection<String> postalCodes) {
+        return inPostalCodes(PostalCodeSelection.of(postalCodes));
+    }
+
+    public SearchQuery inPostalCodesStartingWith(String prefix) {
+        return inPostalCodes(PostalCodeSelection.withPrefix(prefix));
+    }
+
+    public SearchQuery inPostalCodes(PostalCodeSelection postalCodes) {
+        return new SearchQuery(postalCodes, minimumPrice, maximumPrice, minimumRooms, maximumRooms,
+                minimumSquareMeters, maximumSquareMeters, sortKey, sortDirection, offset, limit);
+    }
+
+    public SearchQuery sortedBy(SortKey sortKey, SortDirection sortDirection) {
+        return new SearchQuery(postalCodes, minimumPrice, maximumPrice, minimumRooms, maximumRooms, minimumSquareMeters,
+                maximumSquareMeters, sortKey, sortDirection, offset, limit);
+    }
+
+    public SearchQuery page(int offset, int limit) {
+        return new SearchQuery(postalCodes, minimumPrice, maximumPrice, minimumRooms, maximumRooms, minimumSquareMeters,
+                maximumSquareMeters, sortKey, sortDirection, offset, limit);
+    }
+}
@@ -0,0 +1,6 @@
+package team.codium.refactoring_to_patterns.domain;
+
+public enum SortDirection {
+    ASCENDING,
+    DESCENDING
+}
@@ -0,0 +1,22 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.Comparator;
+import java.util.function.ToIntFunction;
+
+public enum SortKey {
+    PRICE(Property::getPrice),
+    SQUARE_METERS(Property::getSquareMeters),
+    ROOMS(Property::getNumberOfRooms);
+
+    private final ToIntFunction<Property> value;
+
+    SortKey(ToIntFunction<Property> value) {
+        this.value = value;
+    }
+
+    public Comparator<Property> comparator(SortDirection direction) {
+        Comparator<Property> ascending = Comparator.comparingInt(value);
+        Comparator<Property> byKey = direction == SortDirection.DESCENDING ? ascending.reversed() : ascending;
+        return byKey.thenComparingInt(Property::getId);
+    }
+}
@@ -1,6 +1,6 @@
 package team.codium.refactoring_to_patterns.domain;
 
-public class SquareMetersRange {
+public class SquareMetersRange implements BoundedRange {
     private Integer minimumSquareMeters;
     private Integer maximumSquareMeters;
     public SquareMetersRange(Integer minimumSquareMeters, Integer maximumSquareMeters) {
@@ -8,6 +8,24 @@ public class SquareMetersRange {
         this.maximumSquareMeters = maximumSquareMeters;
     }
 
+    public Integer getMinimumSquareMeters() {
+        return minimumSquareMeters;
+    }
+
+    public Integer getMaximumSquareMeters() {
+        return maximumSquareMeters;
+    }
+
+    @Override
+    public int lowerBound() {
+        return BoundedRange.lowerBound(minimumSquareMeters);
+    }
+
+    @Override
+    public int upperBound() {
+        return BoundedRange.upperBound(maximumSquareMeters);
+    }
+
     public boolean isInRange(Property property) {
         return (minimumSquareMeters == null || property.getSquareMeters() >= minimumSquareMeters) &&
                 (maximumSquareMeters == null || property.getSquareMeters() <= maximumSquareMeters);
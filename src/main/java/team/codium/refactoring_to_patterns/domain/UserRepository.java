@@ -0,0 +1,11 @@
+package team.codium.refactoring_to_patterns.domain;
+
+import java.util.Optional;
+
+public interface UserRepository {
+    Optional<User> findById(int id);
+
+    default UserRepository snapshot() {
+        return this;
+    }
+}
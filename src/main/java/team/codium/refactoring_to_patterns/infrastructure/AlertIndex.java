@@ -0,0 +1,198 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Alert;
+import team.codium.refactoring_to_patterns.domain.BoundedRange;
+import team.codium.refactoring_to_patterns.domain.Property;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+public class AlertIndex {
+    private final IntKeyedMap<PostalCodeAlerts> alertsByPostalCode = new IntKeyedMap<>();
+    private int size;
+
+    public void add(Alert alert) {
+        addAll(List.of(alert));
+    }
+
+    public void addAll(List<Alert> alerts) {
+        HashMap<Integer, List<Alert>> newAlertsByPostalCode = new HashMap<>();
+        for (Alert alert : alerts) {
+            newAlertsByPostalCode.computeIfAbsent(alert.postalCodeId(), postalCodeId -> new ArrayList<>()).add(alert);
+        }
+        newAlertsByPostalCode.forEach((postalCodeId, newAlerts) -> {
+            PostalCodeAlerts postalCodeAlerts = alertsByPostalCode.get(postalCodeId);
+            if (postalCodeAlerts == null) {
+                postalCodeAlerts = new PostalCodeAlerts();
+                alertsByPostalCode.put(postalCodeId, postalCodeAlerts);
+            }
+            postalCodeAlerts.addAll(newAlerts);
+        });
+        size += alerts.size();
+    }
+
+    public void clear() {
+        alertsByPostalCode.clear();
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public List<Alert> findMatching(Property property) {
+        PostalCodeAlerts postalCodeAlerts = alertsByPostalCode.get(property.getPostalCodeId());
+        if (postalCodeAlerts == null) {
+            return List.of();
+        }
+        return postalCodeAlerts.findMatching(property);
+    }
+
+    // Groups the properties by postal code, so every bucket of alerts is looked up once for all the properties it covers.
+    public List<List<Alert>> findMatchingAll(List<Property> properties) {
+        List<List<Alert>> matching = new ArrayList<>(Collections.nCopies(properties.size(), List.of()));
+        HashMap<Integer, List<Integer>> propertiesByPostalCode = new HashMap<>();
+        for (int index = 0; index < properties.size(); index++) {
+            propertiesByPostalCode.computeIfAbsent(properties.get(index).getPostalCodeId(), postalCodeId -> new ArrayList<>()).add(index);
+        }
+        propertiesByPostalCode.forEach((postalCodeId, indexes) -> {
+            PostalCodeAlerts postalCodeAlerts = alertsByPostalCode.get(postalCodeId);
+            if (postalCodeAlerts != null) {
+                for (int index : indexes) {
+                    matching.set(index, postalCodeAlerts.findMatching(properties.get(index)));
+                }
+            }
+        });
+        return matching;
+    }
+
+    private static class PostalCodeAlerts {
+        private final Interval price = new Interval(Alert::minimumPrice, Alert::maximumPrice, Property::getPrice);
+        private final Interval rooms = new Interval(Alert::minimumRooms, Alert::maximumRooms, Property::getNumberOfRooms);
+        private final Interval squareMeters = new Interval(Alert::minimumSquareMeters, Alert::maximumSquareMeters, Property::getSquareMeters);
+
+        void addAll(List<Alert> alerts) {
+            price.addAll(alerts);
+            rooms.addAll(alerts);
+            squareMeters.addAll(alerts);
+        }
+
+        List<Alert> findMatching(Property property) {
+            Candidates candidates = price.candidatesFor(property);
+            candidates = rooms.candidatesFor(property).smallest(candidates);
+            candidates = squareMeters.candidatesFor(property).smallest(candidates);
+            ArrayList<Alert> matching = new ArrayList<>();
+            for (int i = candidates.from(); i < candidates.to(); i++) {
+                Alert alert = candidates.endpoints().alerts[i];
+                if (alert.matches(property)) {
+                    matching.add(alert);
+                }
+            }
+            return matching;
+        }
+    }
+
+    private static class Interval {
+        private final Endpoints lowerBounds;
+        private final Endpoints upperBounds;
+        private final ToIntFunction<Property> value;
+
+        Interval(Function<Alert, Integer> lowerBound, Function<Alert, Integer> upperBound, ToIntFunction<Property> value) {
+            this.lowerBounds = new Endpoints(alert -> BoundedRange.lowerBound(lowerBound.apply(alert)));
+            this.upperBounds = new Endpoints(alert -> BoundedRange.upperBound(upperBound.apply(alert)));
+            this.value = value;
+        }
+
+        void addAll(List<Alert> alerts) {
+            lowerBounds.addAll(alerts);
+            upperBounds.addAll(alerts);
+        }
+
+        Candidates candidatesFor(Property property) {
+            int propertyValue = value.applyAsInt(property);
+            Candidates withLowerBoundReached = new Candidates(lowerBounds, 0, lowerBounds.firstAbove(propertyValue));
+            Candidates withUpperBoundNotExceeded = new Candidates(upperBounds, upperBounds.firstAtLeast(propertyValue), upperBounds.size);
+            return withLowerBoundReached.smallest(withUpperBoundNotExceeded);
+        }
+    }
+
+    private static class Endpoints {
+        private final ToIntFunction<Alert> endpoint;
+        private int[] keys = new int[4];
+        private Alert[] alerts = new Alert[4];
+        private int size;
+
+        Endpoints(ToIntFunction<Alert> endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        // Merges from the back so new alerts land behind existing ones with equal keys, as if they had been added one by one.
+        void addAll(List<Alert> newAlerts) {
+            Alert[] sortedNewAlerts = newAlerts.toArray(Alert[]::new);
+            Arrays.sort(sortedNewAlerts, Comparator.comparingInt(endpoint));
+            int mergedSize = size + sortedNewAlerts.length;
+            if (mergedSize > keys.length) {
+                int capacity = Math.max(keys.length * 2, mergedSize);
+                keys = Arrays.copyOf(keys, capacity);
+                alerts = Arrays.copyOf(alerts, capacity);
+            }
+            int existing = size - 1;
+            int added = sortedNewAlerts.length - 1;
+            for (int merged = mergedSize - 1; added >= 0; merged--) {
+                int newKey = endpoint.applyAsInt(sortedNewAlerts[added]);
+                if (existing >= 0 && keys[existing] > newKey) {
+                    keys[merged] = keys[existing];
+                    alerts[merged] = alerts[existing--];
+                } else {
+                    keys[merged] = newKey;
+                    alerts[merged] = sortedNewAlerts[added--];
+                }
+            }
+            size = mergedSize;
+        }
+
+        int firstAtLeast(int value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        int firstAbove(int value) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    private record Candidates(Endpoints endpoints, int from, int to) {
+        int size() {
+            return to - from;
+        }
+
+        Candidates smallest(Candidates other) {
+            return size() <= other.size() ? this : other;
+        }
+    }
+}
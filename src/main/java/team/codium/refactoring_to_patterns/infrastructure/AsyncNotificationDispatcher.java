@@ -0,0 +1,150 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Email;
+import team.codium.refactoring_to_patterns.domain.NotificationDispatcher;
+import team.codium.refactoring_to_patterns.domain.PushMessage;
+import team.codium.refactoring_to_patterns.domain.SmsMessage;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AsyncNotificationDispatcher implements NotificationDispatcher, AutoCloseable {
+    private final EmailSender emailSender;
+    private final SmsSender smsSender;
+    private final PushSender pushSender;
+    private final ThreadPoolExecutor emailChannel;
+    private final ThreadPoolExecutor smsChannel;
+    private final ThreadPoolExecutor pushChannel;
+    private final AtomicLong failedDeliveries = new AtomicLong();
+    private final Object drained = new Object();
+    private long pendingDeliveries;
+
+    public AsyncNotificationDispatcher(EmailSender emailSender, SmsSender smsSender, PushSender pushSender,
+                                       int queueCapacityPerChannel, int sendersPerChannel) {
+        this(emailSender, smsSender, pushSender, queueCapacityPerChannel, sendersPerChannel, sendersPerChannel, sendersPerChannel);
+    }
+
+    // Providers allow different numbers of concurrent connections, so every channel gets its own number of senders.
+    public AsyncNotificationDispatcher(EmailSender emailSender, SmsSender smsSender, PushSender pushSender,
+                                       int queueCapacityPerChannel, int emailSenders, int smsSenders, int pushSenders) {
+        this.emailSender = emailSender;
+        this.smsSender = smsSender;
+        this.pushSender = pushSender;
+        this.emailChannel = channel("email", queueCapacityPerChannel, emailSenders);
+        this.smsChannel = channel("sms", queueCapacityPerChannel, smsSenders);
+        this.pushChannel = channel("push", queueCapacityPerChannel, pushSenders);
+    }
+
+    @Override
+    public void dispatch(Email email) {
+        enqueue(emailChannel, () -> emailSender.sendEmail(email));
+    }
+
+    @Override
+    public void dispatch(SmsMessage smsMessage) {
+        enqueue(smsChannel, () -> smsSender.sendSMSAlert(smsMessage));
+    }
+
+    @Override
+    public void dispatch(PushMessage pushMessage) {
+        enqueue(pushChannel, () -> pushSender.sendPushNotification(pushMessage));
+    }
+
+    public long failedDeliveries() {
+        return failedDeliveries.get();
+    }
+
+    public boolean awaitDrained(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (drained) {
+            while (pendingDeliveries > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(drained, remaining);
+            }
+            return true;
+        }
+    }
+
+    public boolean shutdown(Duration timeout) throws InterruptedException {
+        emailChannel.shutdown();
+        smsChannel.shutdown();
+        pushChannel.shutdown();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        return emailChannel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                && smsChannel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                && pushChannel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        try {
+            shutdown(Duration.ofSeconds(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(ThreadPoolExecutor channel, Runnable delivery) {
+        synchronized (drained) {
+            pendingDeliveries++;
+        }
+        try {
+            channel.execute(() -> deliver(delivery));
+        } catch (RejectedExecutionException e) {
+            delivered();
+            throw e;
+        }
+    }
+
+    private void deliver(Runnable delivery) {
+        try {
+            delivery.run();
+        } catch (RuntimeException e) {
+            failedDeliveries.incrementAndGet();
+        } finally {
+            delivered();
+        }
+    }
+
+    private void delivered() {
+        synchronized (drained) {
+            pendingDeliveries--;
+            if (pendingDeliveries == 0) {
+                drained.notifyAll();
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor channel(String name, int queueCapacity, int senders) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(senders, senders, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-sender-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (delivery, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("The " + name + " channel is shut down");
+                    }
+                    try {
+                        executor.getQueue().put(delivery);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                    // A shutdown between the check and the put may leave no sender to take the delivery off the queue.
+                    if (executor.isShutdown() && executor.getQueue().remove(delivery)) {
+                        throw new RejectedExecutionException("The " + name + " channel is shut down");
+                    }
+                });
+    }
+}
@@ -0,0 +1,152 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Email;
+import team.codium.refactoring_to_patterns.domain.Logger;
+import team.codium.refactoring_to_patterns.domain.Metrics;
+import team.codium.refactoring_to_patterns.domain.NotificationDispatcher;
+import team.codium.refactoring_to_patterns.domain.PushMessage;
+import team.codium.refactoring_to_patterns.domain.SmsMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Only the messages a batch send did not deliver are retried, one at a time: the ones the provider reports as not
+// accepted, or the whole batch when the call itself fails. Retrying only those never sends an accepted message twice.
+// Messages that still fail are logged and counted through NotificationFailures. Once closed, the dispatcher rejects
+// new messages, as nothing would flush them any more.
+public class BatchingNotificationDispatcher implements NotificationDispatcher, AutoCloseable {
+    private final NotificationFailures failures;
+    private final Batch<Email> emails;
+    private final Batch<SmsMessage> smsMessages;
+    private final Batch<PushMessage> pushMessages;
+    private final ScheduledExecutorService windowScheduler;
+
+    public BatchingNotificationDispatcher(EmailSender emailSender, SmsSender smsSender, PushSender pushSender,
+                                          int batchSize, Duration window) {
+        this(emailSender, smsSender, pushSender, batchSize, window, null, Metrics.NONE);
+    }
+
+    public BatchingNotificationDispatcher(EmailSender emailSender, SmsSender smsSender, PushSender pushSender,
+                                          int batchSize, Duration window, Logger logger, Metrics metrics) {
+        this.failures = new NotificationFailures(logger, metrics);
+        this.emails = new Batch<>("email", batchSize, emailSender::sendEmails, emailSender::sendEmail);
+        this.smsMessages = new Batch<>("sms", batchSize, smsSender::sendSMSAlerts, smsSender::sendSMSAlert);
+        this.pushMessages = new Batch<>("push", batchSize, pushSender::sendPushNotifications, pushSender::sendPushNotification);
+        this.windowScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notification-batch-window");
+            thread.setDaemon(true);
+            return thread;
+        });
+        windowScheduler.scheduleWithFixedDelay(this::flush, window.toMillis(), window.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void dispatch(Email email) {
+        emails.add(email);
+    }
+
+    @Override
+    public void dispatch(SmsMessage smsMessage) {
+        smsMessages.add(smsMessage);
+    }
+
+    @Override
+    public void dispatch(PushMessage pushMessage) {
+        pushMessages.add(pushMessage);
+    }
+
+    public void flush() {
+        emails.flush();
+        smsMessages.flush();
+        pushMessages.flush();
+    }
+
+    @Override
+    public void close() {
+        windowScheduler.shutdownNow();
+        emails.close();
+        smsMessages.close();
+        pushMessages.close();
+    }
+
+    private class Batch<M> {
+        private final String channel;
+        private final int size;
+        private final Function<List<M>, List<M>> sender;
+        private final Consumer<M> singleSender;
+        private List<M> pending;
+        private boolean isClosed;
+
+        Batch(String channel, int size, Function<List<M>, List<M>> sender, Consumer<M> singleSender) {
+            this.channel = channel;
+            this.size = size;
+            this.sender = sender;
+            this.singleSender = singleSender;
+            this.pending = new ArrayList<>(size);
+        }
+
+        void add(M message) {
+            List<M> full = null;
+            synchronized (this) {
+                if (isClosed) {
+                    throw new RejectedExecutionException("The " + channel + " batch is closed");
+                }
+                pending.add(message);
+                if (pending.size() >= size) {
+                    full = takePending();
+                }
+            }
+            if (full != null) {
+                send(full);
+            }
+        }
+
+        void flush() {
+            List<M> messages;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                messages = takePending();
+            }
+            send(messages);
+        }
+
+        void close() {
+            synchronized (this) {
+                isClosed = true;
+            }
+            flush();
+        }
+
+        private void send(List<M> messages) {
+            List<M> notAccepted;
+            try {
+                notAccepted = sender.apply(messages);
+            } catch (RuntimeException batchError) {
+                failures.batchFailed(channel, messages.size(), batchError);
+                notAccepted = messages;
+            }
+            for (M message : notAccepted) {
+                try {
+                    singleSender.accept(message);
+                } catch (RuntimeException messageError) {
+                    failures.messageFailed(channel, message, messageError);
+                }
+            }
+        }
+
+        private List<M> takePending() {
+            List<M> messages = pending;
+            pending = new ArrayList<>(size);
+            return messages;
+        }
+    }
+}
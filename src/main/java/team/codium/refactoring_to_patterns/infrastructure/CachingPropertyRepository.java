@@ -0,0 +1,206 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.*;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Writes through this cache invalidate the postal codes they touch and move the cache on to the version they produced.
+// When the delegate reads a store, writes from anywhere else show up as a version the cache did not move to, which
+// starts a new generation of the cache, just as the indexed repositories reload on it. The delegate's version is checked
+// at most once per refresh interval, so a hit costs no file system call, and never while a write through the cache is in
+// flight, as that write will only invalidate its own postal codes.
+public class CachingPropertyRepository implements PropertyRepository {
+    private static final Duration DEFAULT_REFRESH_CHECK_INTERVAL = Duration.ofSeconds(1);
+    private static final FileVersion UNVERSIONED = new FileVersion(0, 0);
+
+    private final PropertyRepository propertyRepository;
+    private final int maximumEntries;
+    private final long refreshCheckIntervalNanos;
+    private final LinkedHashMap<Key, Property[]> results;
+    private final HashMap<String, HashSet<Key>> keysByPostalCode = new HashMap<>();
+    private final HashMap<String, MissesInFlight> missesInFlightByPostalCode = new HashMap<>();
+    private final HashMap<FileVersion, FileVersion> ownChanges = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private FileVersion cachedVersion;
+    private long cacheGeneration;
+    private long lastRefreshCheck;
+    private int writesInFlight;
+
+    public CachingPropertyRepository(PropertyRepository propertyRepository, int maximumEntries) {
+        this(propertyRepository, maximumEntries, DEFAULT_REFRESH_CHECK_INTERVAL);
+    }
+
+    public CachingPropertyRepository(PropertyRepository propertyRepository, int maximumEntries, Duration refreshCheckInterval) {
+        this.propertyRepository = propertyRepository;
+        this.maximumEntries = maximumEntries;
+        this.refreshCheckIntervalNanos = refreshCheckInterval.toNanos();
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Property[]> eldest) {
+                if (size() <= CachingPropertyRepository.this.maximumEntries) {
+                    return false;
+                }
+                forget(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Stream<Property> find(String postalCode, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        Key key = Key.of(postalCode, priceRange, roomRange, squareMetersRange);
+        long generation;
+        MissesInFlight missesInFlight;
+        long postalCodeGeneration;
+        synchronized (this) {
+            refreshIfDue();
+            Property[] cached = results.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Arrays.stream(cached);
+            }
+            generation = cacheGeneration;
+            missesInFlight = missesInFlightByPostalCode.computeIfAbsent(postalCode, code -> new MissesInFlight());
+            missesInFlight.count++;
+            postalCodeGeneration = missesInFlight.generation;
+        }
+        misses.incrementAndGet();
+        Property[] found = null;
+        try (Stream<Property> properties = propertyRepository.find(postalCode, priceRange, roomRange, squareMetersRange)) {
+            found = properties.toArray(Property[]::new);
+        } finally {
+            synchronized (this) {
+                if (--missesInFlight.count == 0) {
+                    missesInFlightByPostalCode.remove(postalCode);
+                }
+                if (found != null && generation == cacheGeneration && postalCodeGeneration == missesInFlight.generation) {
+                    results.put(key, found);
+                    keysByPostalCode.computeIfAbsent(postalCode, code -> new HashSet<>()).add(key);
+                }
+            }
+        }
+        return Arrays.stream(found);
+    }
+
+    // Multi-code results are not cached: a single add could invalidate them through any of their postal codes.
+    @Override
+    public Stream<Property> find(PostalCodeSelection postalCodes, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        return propertyRepository.find(postalCodes, priceRange, roomRange, squareMetersRange);
+    }
+
+    @Override
+    public void add(Property property) {
+        addAll(List.of(property));
+    }
+
+    // Concurrent writes may finish in any order, so the cache only follows the chain of their version changes once the
+    // last of them is done. Should that chain not lead from the cached version, another writer came in between and the
+    // next check starts a new generation.
+    @Override
+    public void addAll(List<Property> properties) {
+        synchronized (this) {
+            writesInFlight++;
+        }
+        FileVersionChange change = null;
+        try {
+            if (propertyRepository instanceof VersionedPropertyRepository versionedRepository) {
+                change = versionedRepository.append(properties);
+            } else {
+                propertyRepository.addAll(properties);
+            }
+        } finally {
+            synchronized (this) {
+                properties.stream().map(Property::getPostalCode).distinct().forEach(this::invalidate);
+                if (change != null) {
+                    ownChanges.put(change.before(), change.after());
+                }
+                if (--writesInFlight == 0) {
+                    FileVersion version = cachedVersion;
+                    FileVersion next;
+                    while ((next = ownChanges.remove(version)) != null) {
+                        version = next;
+                    }
+                    cachedVersion = version;
+                    ownChanges.clear();
+                }
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    private void refreshIfDue() {
+        long now = System.nanoTime();
+        if (writesInFlight > 0 || (cachedVersion != null && now - lastRefreshCheck < refreshCheckIntervalNanos)) {
+            return;
+        }
+        lastRefreshCheck = now;
+        FileVersion version = delegateVersion();
+        if (!version.equals(cachedVersion)) {
+            results.clear();
+            keysByPostalCode.clear();
+            cacheGeneration++;
+            cachedVersion = version;
+        }
+    }
+
+    private FileVersion delegateVersion() {
+        return propertyRepository instanceof VersionedPropertyRepository versionedRepository
+                ? versionedRepository.version()
+                : UNVERSIONED;
+    }
+
+    private void invalidate(String postalCode) {
+        MissesInFlight missesInFlight = missesInFlightByPostalCode.get(postalCode);
+        if (missesInFlight != null) {
+            missesInFlight.generation++;
+        }
+        HashSet<Key> keys = keysByPostalCode.remove(postalCode);
+        if (keys != null) {
+            results.keySet().removeAll(keys);
+        }
+    }
+
+    private void forget(Key key) {
+        HashSet<Key> keys = keysByPostalCode.get(key.postalCode());
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByPostalCode.remove(key.postalCode());
+        }
+    }
+
+    // Only postal codes with a search on its way to the delegate keep a generation, which an add bumps so that search does
+    // not cache what it found before the add.
+    private static class MissesInFlight {
+        private int count;
+        private long generation;
+    }
+
+    private record Key(String postalCode, int minimumPrice, int maximumPrice, int minimumRooms, int maximumRooms,
+                       int minimumSquareMeters, int maximumSquareMeters) {
+        static Key of(String postalCode, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+            return new Key(postalCode,
+                    priceRange.lowerBound(), priceRange.upperBound(),
+                    roomRange.lowerBound(), roomRange.upperBound(),
+                    squareMetersRange.lowerBound(), squareMetersRange.upperBound());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Email;
+import team.codium.refactoring_to_patterns.domain.Logger;
+import team.codium.refactoring_to_patterns.domain.Metrics;
+import team.codium.refactoring_to_patterns.domain.NotificationDispatcher;
+import team.codium.refactoring_to_patterns.domain.PushMessage;
+import team.codium.refactoring_to_patterns.domain.SmsMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Overlapping alerts notify the same user about the same property more than once, so notifications are keyed on the
+// user, the property and the channel. Deduplicating drops the repeats within the window; digesting also folds everything
+// a user gets on a channel during the window into a single message. Messages dispatched without a user and a property
+// cannot be told apart and go straight through.
+public class CoalescingNotificationDispatcher implements NotificationDispatcher, AutoCloseable {
+    public enum Mode {
+        DEDUPLICATE,
+        DIGEST
+    }
+
+    private static final int MAXIMUM_DIGEST_ATTEMPTS = 3;
+
+    private final NotificationDispatcher notificationDispatcher;
+    private final long windowNanos;
+    private final Mode mode;
+    private final LinkedHashMap<NotificationKey, Long> recentlyDispatched = new LinkedHashMap<>();
+    private final Digest<Email> emails;
+    private final Digest<SmsMessage> smsMessages;
+    private final Digest<PushMessage> pushMessages;
+    private final ScheduledExecutorService windowScheduler;
+
+    public CoalescingNotificationDispatcher(NotificationDispatcher notificationDispatcher, Duration window, Mode mode) {
+        this(notificationDispatcher, window, mode, null, Metrics.NONE);
+    }
+
+    public CoalescingNotificationDispatcher(NotificationDispatcher notificationDispatcher, Duration window, Mode mode,
+                                            Logger logger, Metrics metrics) {
+        NotificationFailures failures = new NotificationFailures(logger, metrics);
+        this.notificationDispatcher = notificationDispatcher;
+        this.windowNanos = window.toNanos();
+        this.mode = mode;
+        this.emails = new Digest<>("email", CoalescingNotificationDispatcher::digestOfEmails, notificationDispatcher::dispatch, failures);
+        this.smsMessages = new Digest<>("sms", messages -> new SmsMessage(messages.get(0).phoneNumber(),
+                digestOf(messages.stream().map(SmsMessage::message).collect(Collectors.toList()))), notificationDispatcher::dispatch, failures);
+        this.pushMessages = new Digest<>("push", messages -> new PushMessage(messages.get(0).phoneNumber(),
+                digestOf(messages.stream().map(PushMessage::message).collect(Collectors.toList()))), notificationDispatcher::dispatch, failures);
+        if (mode == Mode.DIGEST) {
+            this.windowScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "notification-digest-window");
+                thread.setDaemon(true);
+                return thread;
+            });
+            windowScheduler.scheduleWithFixedDelay(this::flush, window.toMillis(), window.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.windowScheduler = null;
+        }
+    }
+
+    @Override
+    public void dispatch(Email email) {
+        notificationDispatcher.dispatch(email);
+    }
+
+    @Override
+    public void dispatch(SmsMessage smsMessage) {
+        notificationDispatcher.dispatch(smsMessage);
+    }
+
+    @Override
+    public void dispatch(PushMessage pushMessage) {
+        notificationDispatcher.dispatch(pushMessage);
+    }
+
+    @Override
+    public void dispatch(int userId, int propertyId, Email email) {
+        if (mode == Mode.DIGEST) {
+            emails.add(userId, propertyId, email);
+        } else if (isFirstInWindow(new NotificationKey(userId, propertyId, "email"))) {
+            notificationDispatcher.dispatch(userId, propertyId, email);
+        }
+    }
+
+    @Override
+    public void dispatch(int userId, int propertyId, SmsMessage smsMessage) {
+        if (mode == Mode.DIGEST) {
+            smsMessages.add(userId, propertyId, smsMessage);
+        } else if (isFirstInWindow(new NotificationKey(userId, propertyId, "sms"))) {
+            notificationDispatcher.dispatch(userId, propertyId, smsMessage);
+        }
+    }
+
+    @Override
+    public void dispatch(int userId, int propertyId, PushMessage pushMessage) {
+        if (mode == Mode.DIGEST) {
+            pushMessages.add(userId, propertyId, pushMessage);
+        } else if (isFirstInWindow(new NotificationKey(userId, propertyId, "push"))) {
+            notificationDispatcher.dispatch(userId, propertyId, pushMessage);
+        }
+    }
+
+    public void flush() {
+        emails.flush();
+        smsMessages.flush();
+        pushMessages.flush();
+    }
+
+    @Override
+    public void close() {
+        if (windowScheduler != null) {
+            windowScheduler.shutdownNow();
+        }
+        while (emails.hasPending() || smsMessages.hasPending() || pushMessages.hasPending()) {
+            flush();
+        }
+    }
+
+    private synchronized boolean isFirstInWindow(NotificationKey key) {
+        long now = System.nanoTime();
+        Iterator<Long> dispatchedAt = recentlyDispatched.values().iterator();
+        while (dispatchedAt.hasNext() && now - dispatchedAt.next() >= windowNanos) {
+            dispatchedAt.remove();
+        }
+        return recentlyDispatched.putIfAbsent(key, now) == null;
+    }
+
+    private static Email digestOfEmails(List<Email> emails) {
+        return new Email(emails.get(0).from(), emails.get(0).to(), "There are " + emails.size() + " new properties",
+                emails.stream().map(email -> email.subject() + ". " + email.body()).collect(Collectors.joining("\n")));
+    }
+
+    private static String digestOf(List<String> messages) {
+        return "There are " + messages.size() + " new properties:\n" + String.join("\n", messages);
+    }
+
+    private record NotificationKey(int userId, int propertyId, String channel) {
+    }
+
+    // A digest that cannot be sent goes back to the pending ones, ahead of whatever the user got meanwhile, and is tried
+    // again on the next window. One user's failing digest never costs the other users theirs.
+    private static class Digest<M> {
+        private final String channel;
+        private final Function<List<M>, M> combine;
+        private final Consumer<M> sender;
+        private final NotificationFailures failures;
+        private LinkedHashMap<Integer, Pending<M>> pendingByUser = new LinkedHashMap<>();
+
+        Digest(String channel, Function<List<M>, M> combine, Consumer<M> sender, NotificationFailures failures) {
+            this.channel = channel;
+            this.combine = combine;
+            this.sender = sender;
+            this.failures = failures;
+        }
+
+        synchronized void add(int userId, int propertyId, M message) {
+            pendingByUser.computeIfAbsent(userId, id -> new Pending<>()).messagesByProperty.putIfAbsent(propertyId, message);
+        }
+
+        synchronized boolean hasPending() {
+            return !pendingByUser.isEmpty();
+        }
+
+        void flush() {
+            LinkedHashMap<Integer, Pending<M>> due;
+            synchronized (this) {
+                if (pendingByUser.isEmpty()) {
+                    return;
+                }
+                due = pendingByUser;
+                pendingByUser = new LinkedHashMap<>();
+            }
+            for (Map.Entry<Integer, Pending<M>> userDigest : due.entrySet()) {
+                List<M> messages = new ArrayList<>(userDigest.getValue().messagesByProperty.values());
+                M digest = messages.size() == 1 ? messages.get(0) : combine.apply(messages);
+                try {
+                    sender.accept(digest);
+                } catch (RuntimeException e) {
+                    failures.messageFailed(channel, digest, e);
+                    retry(userDigest.getKey(), userDigest.getValue());
+                }
+            }
+        }
+
+        private synchronized void retry(int userId, Pending<M> failed) {
+            if (failed.attempts + 1 >= MAXIMUM_DIGEST_ATTEMPTS) {
+                return;
+            }
+            Pending<M> retried = new Pending<>();
+            retried.attempts = failed.attempts + 1;
+            retried.messagesByProperty.putAll(failed.messagesByProperty);
+            Pending<M> arrivedMeanwhile = pendingByUser.remove(userId);
+            if (arrivedMeanwhile != null) {
+                arrivedMeanwhile.messagesByProperty.forEach(retried.messagesByProperty::putIfAbsent);
+            }
+            pendingByUser.put(userId, retried);
+        }
+    }
+
+    private static class Pending<M> {
+        private final LinkedHashMap<Integer, M> messagesByProperty = new LinkedHashMap<>();
+        private int attempts;
+    }
+}
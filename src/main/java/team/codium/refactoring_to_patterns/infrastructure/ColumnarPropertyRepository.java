@@ -0,0 +1,244 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class ColumnarPropertyRepository implements PropertySearch {
+    private static final int MAGIC = 0x50524f50;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final HashMap<String, Integer> postalCodes = new HashMap<>();
+    private final ArrayList<String> postalCodesByCode = new ArrayList<>();
+    private final int[] firstRowOfPostalCode;
+    private final IntBuffer ids;
+    private final IntBuffer prices;
+    private final IntBuffer rooms;
+    private final IntBuffer squareMeters;
+    private final IntBuffer owners;
+    private final IntBuffer postalCodeColumn;
+    private final IntBuffer descriptionOffsets;
+    private final ByteBuffer descriptions;
+
+    public ColumnarPropertyRepository(String columnarFile) {
+        MappedByteBuffer content = map(Paths.get(columnarFile));
+        if (content.getInt(0) != MAGIC || content.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException(columnarFile + " is not a columnar properties file");
+        }
+        int rows = content.getInt(8);
+        int dictionarySize = content.getInt(12);
+        int position = HEADER_BYTES;
+        for (int code = 0; code < dictionarySize; code++) {
+            int length = content.getInt(position);
+            byte[] postalCode = new byte[length];
+            content.get(position + Integer.BYTES, postalCode);
+            position += Integer.BYTES + length;
+            String postalCodeAsString = new String(postalCode, StandardCharsets.UTF_8);
+            postalCodes.put(postalCodeAsString, code);
+            postalCodesByCode.add(postalCodeAsString);
+        }
+        firstRowOfPostalCode = new int[dictionarySize + 1];
+        content.slice(position, (dictionarySize + 1) * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(firstRowOfPostalCode);
+        position += (dictionarySize + 1) * Integer.BYTES;
+        ids = intColumn(content, position, rows);
+        prices = intColumn(content, position += rows * Integer.BYTES, rows);
+        rooms = intColumn(content, position += rows * Integer.BYTES, rows);
+        squareMeters = intColumn(content, position += rows * Integer.BYTES, rows);
+        owners = intColumn(content, position += rows * Integer.BYTES, rows);
+        postalCodeColumn = intColumn(content, position += rows * Integer.BYTES, rows);
+        descriptionOffsets = intColumn(content, position += rows * Integer.BYTES, rows + 1);
+        position += (rows + 1) * Integer.BYTES;
+        descriptions = content.slice(position, content.limit() - position);
+    }
+
+    public static void create(String columnarFile, RecordStore<Property> source) {
+        TreeMap<String, List<Property>> propertiesByPostalCode = new TreeMap<>();
+        try (Stream<Property> properties = source.stream()) {
+            properties.forEach(property -> propertiesByPostalCode.computeIfAbsent(property.getPostalCode(), postalCode -> new ArrayList<>()).add(property));
+        }
+        ArrayList<Property> rows = new ArrayList<>();
+        ArrayList<byte[]> dictionary = new ArrayList<>();
+        int[] firstRowOfPostalCode = new int[propertiesByPostalCode.size() + 1];
+        for (List<Property> properties : propertiesByPostalCode.values()) {
+            properties.sort(Comparator.comparingInt(Property::getPrice));
+            dictionary.add(properties.get(0).getPostalCode().getBytes(StandardCharsets.UTF_8));
+            rows.addAll(properties);
+            firstRowOfPostalCode[dictionary.size()] = rows.size();
+        }
+        ArrayList<byte[]> descriptions = new ArrayList<>(rows.size());
+        int descriptionBytes = 0;
+        for (Property property : rows) {
+            byte[] description = property.getDescription() == null ? new byte[0] : property.getDescription().getBytes(StandardCharsets.UTF_8);
+            descriptions.add(description);
+            descriptionBytes += description.length;
+        }
+        int dictionaryBytes = dictionary.stream().mapToInt(postalCode -> Integer.BYTES + postalCode.length).sum();
+        long size = HEADER_BYTES + dictionaryBytes + (long) firstRowOfPostalCode.length * Integer.BYTES
+                + 7L * rows.size() * Integer.BYTES + Integer.BYTES + descriptionBytes;
+        try (FileChannel channel = FileChannel.open(Paths.get(columnarFile), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            content.order(ByteOrder.LITTLE_ENDIAN);
+            content.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(rows.size()).putInt(dictionary.size());
+            for (byte[] postalCode : dictionary) {
+                content.putInt(postalCode.length).put(postalCode);
+            }
+            for (int firstRow : firstRowOfPostalCode) {
+                content.putInt(firstRow);
+            }
+            rows.forEach(property -> content.putInt(property.getId()));
+            rows.forEach(property -> content.putInt(property.getPrice()));
+            rows.forEach(property -> content.putInt(property.getNumberOfRooms()));
+            rows.forEach(property -> content.putInt(property.getSquareMeters()));
+            rows.forEach(property -> content.putInt(property.getOwnerId()));
+            for (int code = 0; code < dictionary.size(); code++) {
+                for (int row = firstRowOfPostalCode[code]; row < firstRowOfPostalCode[code + 1]; row++) {
+                    content.putInt(code);
+                }
+            }
+            int descriptionOffset = 0;
+            for (byte[] description : descriptions) {
+                content.putInt(descriptionOffset);
+                descriptionOffset += description.length;
+            }
+            content.putInt(descriptionOffset);
+            descriptions.forEach(content::put);
+            content.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Stream<Property> find(String postalCode, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        Integer code = postalCodes.get(postalCode);
+        if (code == null) {
+            return Stream.empty();
+        }
+        return matchingRows(code, priceRange, roomRange, squareMetersRange).mapToObj(this::materialize);
+    }
+
+    // The dictionary is in postal code order, so a prefix covers one run of codes and their rows follow each other in the
+    // file. Every code yields its rows ordered by price, and the stable sort over those runs gives a single-code search's
+    // price order.
+    @Override
+    public Stream<Property> find(PostalCodeSelection postalCodes, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        ArrayList<Property> matches = new ArrayList<>();
+        int runs = 0;
+        for (int code : codesIn(postalCodes)) {
+            int before = matches.size();
+            matchingRows(code, priceRange, roomRange, squareMetersRange).forEach(row -> matches.add(materialize(row)));
+            if (matches.size() > before) {
+                runs++;
+            }
+        }
+        if (runs > 1) {
+            matches.sort(Comparator.comparingInt(Property::getPrice));
+        }
+        return matches.stream();
+    }
+
+    private List<Integer> codesIn(PostalCodeSelection selection) {
+        ArrayList<Integer> codes = new ArrayList<>();
+        if (!selection.isPrefix()) {
+            for (String postalCode : selection.postalCodes()) {
+                Integer code = postalCodes.get(postalCode);
+                if (code != null) {
+                    codes.add(code);
+                }
+            }
+            return codes;
+        }
+        int firstCode = Collections.binarySearch(postalCodesByCode, selection.prefix());
+        for (int code = firstCode < 0 ? -firstCode - 1 : firstCode;
+             code < postalCodesByCode.size() && postalCodesByCode.get(code).startsWith(selection.prefix()); code++) {
+            if (selection.matches(postalCodesByCode.get(code))) {
+                codes.add(code);
+            }
+        }
+        return codes;
+    }
+
+    private IntStream matchingRows(int code, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        int firstRow = firstRowOfPostalCode[code];
+        int lastRow = firstRowOfPostalCode[code + 1];
+        int from = priceRange.getMinimumPrice() == null ? firstRow : firstRowWithPriceAtLeast(firstRow, lastRow, priceRange.getMinimumPrice());
+        int to = priceRange.getMaximumPrice() == null ? lastRow : firstRowWithPriceAbove(from, lastRow, priceRange.getMaximumPrice());
+        int minimumRooms = roomRange.lowerBound();
+        int maximumRooms = roomRange.upperBound();
+        int minimumSquareMeters = squareMetersRange.lowerBound();
+        int maximumSquareMeters = squareMetersRange.upperBound();
+        return IntStream.range(from, to)
+                .filter(row -> rooms.get(row) >= minimumRooms && rooms.get(row) <= maximumRooms
+                        && squareMeters.get(row) >= minimumSquareMeters && squareMeters.get(row) <= maximumSquareMeters);
+    }
+
+    public int size() {
+        return ids.limit();
+    }
+
+    private Property materialize(int row) {
+        int descriptionStart = descriptionOffsets.get(row);
+        byte[] description = new byte[descriptionOffsets.get(row + 1) - descriptionStart];
+        descriptions.get(descriptionStart, description);
+        return new Property(ids.get(row), new String(description, StandardCharsets.UTF_8), postalCodesByCode.get(postalCodeColumn.get(row)),
+                prices.get(row), rooms.get(row), squareMeters.get(row), owners.get(row));
+    }
+
+    private int firstRowWithPriceAtLeast(int low, int high, int price) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (prices.get(middle) < price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int firstRowWithPriceAbove(int low, int high, int price) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (prices.get(middle) <= price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static IntBuffer intColumn(ByteBuffer content, int position, int length) {
+        return content.slice(position, length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static MappedByteBuffer map(Path columnarFile) {
+        try (FileChannel channel = FileChannel.open(columnarFile, StandardOpenOption.READ)) {
+            MappedByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            content.order(ByteOrder.LITTLE_ENDIAN);
+            return content;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import team.codium.refactoring_to_patterns.domain.Alert;
+
+public class CompactAlertCodec implements RecordCodec<Alert> {
+    @Override
+    public String encode(Alert alert) {
+        JsonArray fields = new JsonArray(9);
+        fields.add(alert.userId());
+        fields.add(alert.alertType());
+        fields.add(alert.postalCode());
+        fields.add(alert.minimumPrice());
+        fields.add(alert.maximumPrice());
+        fields.add(alert.minimumRooms());
+        fields.add(alert.maximumRooms());
+        fields.add(alert.minimumSquareMeters());
+        fields.add(alert.maximumSquareMeters());
+        return fields.toString();
+    }
+
+    @Override
+    public Alert decode(String line) {
+        JsonArray fields = JsonParser.parseString(line).getAsJsonArray();
+        return new Alert(fields.get(0).getAsInt(), fields.get(1).getAsString(), fields.get(2).getAsString(),
+                integerOrNull(fields.get(3)), integerOrNull(fields.get(4)), integerOrNull(fields.get(5)),
+                integerOrNull(fields.get(6)), integerOrNull(fields.get(7)), integerOrNull(fields.get(8)));
+    }
+
+    private static Integer integerOrNull(JsonElement field) {
+        return field.isJsonNull() ? null : field.getAsInt();
+    }
+}
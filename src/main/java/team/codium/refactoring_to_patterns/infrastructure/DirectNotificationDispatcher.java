@@ -0,0 +1,33 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Email;
+import team.codium.refactoring_to_patterns.domain.NotificationDispatcher;
+import team.codium.refactoring_to_patterns.domain.PushMessage;
+import team.codium.refactoring_to_patterns.domain.SmsMessage;
+
+public class DirectNotificationDispatcher implements NotificationDispatcher {
+    private final EmailSender emailSender;
+    private final SmsSender smsSender;
+    private final PushSender pushSender;
+
+    public DirectNotificationDispatcher(EmailSender emailSender, SmsSender smsSender, PushSender pushSender) {
+        this.emailSender = emailSender;
+        this.smsSender = smsSender;
+        this.pushSender = pushSender;
+    }
+
+    @Override
+    public void dispatch(Email email) {
+        emailSender.sendEmail(email);
+    }
+
+    @Override
+    public void dispatch(SmsMessage smsMessage) {
+        smsSender.sendSMSAlert(smsMessage);
+    }
+
+    @Override
+    public void dispatch(PushMessage pushMessage) {
+        pushSender.sendPushNotification(pushMessage);
+    }
+}
@@ -2,8 +2,16 @@ package team.codium.refactoring_to_patterns.infrastructure;
 
 import team.codium.refactoring_to_patterns.domain.Email;
 
+import java.util.List;
+
 public class EmailSender {
     public void sendEmail(Email email) {
         // Do not implement this code. Imagine the code is already here
     }
+
+    // Returns the messages the provider did not accept. It throws only when the provider accepted none of them.
+    public List<Email> sendEmails(List<Email> emails) {
+        // Do not implement this code. Imagine the code is already here
+        return List.of();
+    }
 }
@@ -0,0 +1,37 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One writer per file: a lock per path serializes writers inside this JVM and an OS file lock serializes other processes.
+final class FileLocks {
+    private static final ConcurrentHashMap<Path, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    private FileLocks() {
+    }
+
+    static ReentrantLock forPath(Path file) {
+        return LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(), path -> new ReentrantLock());
+    }
+
+    static FileLock lockExclusively(FileChannel channel) throws IOException {
+        return channel.lock();
+    }
+
+    static void force(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (NoSuchFileException e) {
+            // Nothing has been written yet, so there is nothing to make durable.
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
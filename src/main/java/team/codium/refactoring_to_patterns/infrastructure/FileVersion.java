@@ -0,0 +1,20 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+public record FileVersion(long lastModified, long size) {
+    public static FileVersion of(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new FileVersion(attributes.lastModifiedTime().toMillis(), attributes.size());
+        } catch (NoSuchFileException e) {
+            return new FileVersion(-1, -1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
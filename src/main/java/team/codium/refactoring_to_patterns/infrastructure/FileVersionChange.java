@@ -0,0 +1,8 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+// The versions of a file right before and right after one append, both read while the append held the file's lock.
+public record FileVersionChange(FileVersion before, FileVersion after) {
+    static FileVersionChange none(FileVersion version) {
+        return new FileVersionChange(version, version);
+    }
+}
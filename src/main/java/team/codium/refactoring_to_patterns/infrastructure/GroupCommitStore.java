@@ -0,0 +1,161 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Collects the appends of concurrent callers for a short window and writes them with one append and one force,
+// so every write is durable while the cost of the flush is shared by the whole group.
+// A failed append means the group was not written and its callers may append again. A failed force after a successful
+// append reaches the callers as a NotDurableException: the records are already in the file, so they must not append
+// them again, only force the store.
+public class GroupCommitStore<T> implements RecordStore<T>, AutoCloseable {
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final RecordStore<T> store;
+    private final long windowNanos;
+    private final int maximumBatch;
+    private final LinkedBlockingQueue<PendingAppend<T>> pendingAppends = new LinkedBlockingQueue<>();
+    private final AtomicLong commits = new AtomicLong();
+    private final Thread committer;
+    private volatile boolean isRunning = true;
+
+    public GroupCommitStore(RecordStore<T> store, Duration window, int maximumBatch) {
+        if (maximumBatch < 1) {
+            throw new IllegalArgumentException("The maximum batch must be positive");
+        }
+        this.store = store;
+        this.windowNanos = window.toNanos();
+        this.maximumBatch = maximumBatch;
+        this.committer = new Thread(this::commitPendingAppends, "group-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return store.stream();
+    }
+
+    @Override
+    public void append(T record) {
+        appendAll(List.of(record));
+    }
+
+    @Override
+    public FileVersionChange appendAll(List<T> records) {
+        try {
+            return submit(records).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // Checking that the store is open and queueing the append happen under the same lock that close() takes to stop it,
+    // so an append is either refused or queued before the committer is told to drain and stop.
+    public CompletableFuture<FileVersionChange> submit(List<T> records) {
+        CompletableFuture<FileVersionChange> committed = new CompletableFuture<>();
+        if (records.isEmpty()) {
+            committed.complete(FileVersionChange.none(store.version()));
+            return committed;
+        }
+        PendingAppend<T> pendingAppend = new PendingAppend<>(List.copyOf(records), committed);
+        synchronized (this) {
+            if (!isRunning) {
+                throw new IllegalStateException("The group commit store is closed");
+            }
+            pendingAppends.add(pendingAppend);
+        }
+        return committed;
+    }
+
+    @Override
+    public void force() {
+        store.force();
+    }
+
+    @Override
+    public FileVersion version() {
+        return store.version();
+    }
+
+    public long commits() {
+        return commits.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            isRunning = false;
+        }
+        try {
+            committer.join(CLOSE_TIMEOUT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        committer.interrupt();
+    }
+
+    private void commitPendingAppends() {
+        ArrayList<PendingAppend<T>> group = new ArrayList<>();
+        try {
+            while (isRunning || !pendingAppends.isEmpty()) {
+                PendingAppend<T> first = pendingAppends.poll(10, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                int records = first.records().size();
+                long deadline = System.nanoTime() + windowNanos;
+                while (records < maximumBatch) {
+                    PendingAppend<T> next = pendingAppends.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                    records += next.records().size();
+                }
+                commit(group, records);
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IllegalStateException closed = new IllegalStateException("The group commit store was closed before the append was committed");
+        group.forEach(pendingAppend -> pendingAppend.committed().completeExceptionally(closed));
+        pendingAppends.forEach(pendingAppend -> pendingAppend.committed().completeExceptionally(closed));
+    }
+
+    private void commit(List<PendingAppend<T>> group, int records) {
+        ArrayList<T> allRecords = new ArrayList<>(records);
+        group.forEach(pendingAppend -> allRecords.addAll(pendingAppend.records()));
+        FileVersionChange change;
+        try {
+            change = store.appendAll(allRecords);
+        } catch (RuntimeException e) {
+            group.forEach(pendingAppend -> pendingAppend.committed().completeExceptionally(e));
+            return;
+        }
+        try {
+            store.force();
+        } catch (RuntimeException e) {
+            NotDurableException notDurable = new NotDurableException(change, e);
+            group.forEach(pendingAppend -> pendingAppend.committed().completeExceptionally(notDurable));
+            return;
+        }
+        commits.incrementAndGet();
+        group.forEach(pendingAppend -> pendingAppend.committed().complete(change));
+    }
+
+    private record PendingAppend<T>(List<T> records, CompletableFuture<FileVersionChange> committed) {
+    }
+}
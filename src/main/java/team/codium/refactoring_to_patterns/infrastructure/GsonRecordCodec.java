@@ -0,0 +1,22 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import com.google.gson.Gson;
+
+public class GsonRecordCodec<T> implements RecordCodec<T> {
+    private final Gson gson = RecordGson.create();
+    private final Class<T> type;
+
+    public GsonRecordCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public String encode(T record) {
+        return gson.toJson(record);
+    }
+
+    @Override
+    public T decode(String line) {
+        return gson.fromJson(line, type);
+    }
+}
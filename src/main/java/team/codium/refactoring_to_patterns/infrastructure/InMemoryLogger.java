@@ -2,19 +2,46 @@ package team.codium.refactoring_to_patterns.infrastructure;
 
 import team.codium.refactoring_to_patterns.domain.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 
+// Keeps every entry and hands out the list itself by default, as it always has. A logger built with a maximum keeps only
+// the latest entries, and getLoggedData returns a copy of them because they live in a ring rather than in a list.
 public class InMemoryLogger implements Logger {
-    private final ArrayList<HashMap<String, Object>> loggedData = new ArrayList<>();
+    private final ArrayList<HashMap<String, Object>> loggedData;
+    private final ArrayDeque<HashMap<String, Object>> latestData;
+    private final int maximumRetained;
+
+    public InMemoryLogger() {
+        this.loggedData = new ArrayList<>();
+        this.latestData = null;
+        this.maximumRetained = Integer.MAX_VALUE;
+    }
+
+    public InMemoryLogger(int maximumRetained) {
+        if (maximumRetained <= 0) {
+            throw new IllegalArgumentException("The maximum number of retained entries must be positive");
+        }
+        this.loggedData = null;
+        this.latestData = new ArrayDeque<>();
+        this.maximumRetained = maximumRetained;
+    }
 
     @Override
-    public void log(HashMap<String, Object> data) {
-        loggedData.add(data);
+    public synchronized void log(HashMap<String, Object> data) {
+        if (latestData == null) {
+            loggedData.add(data);
+            return;
+        }
+        latestData.addLast(data);
+        if (latestData.size() > maximumRetained) {
+            latestData.removeFirst();
+        }
     }
 
     @Override
-    public ArrayList<HashMap<String, Object>> getLoggedData() {
-        return loggedData;
+    public synchronized ArrayList<HashMap<String, Object>> getLoggedData() {
+        return latestData == null ? loggedData : new ArrayList<>(latestData);
     }
 }
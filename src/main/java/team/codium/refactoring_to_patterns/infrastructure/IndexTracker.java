@@ -0,0 +1,75 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import java.util.HashMap;
+
+// Keeps an in-memory index in step with its store while appends run concurrently outside the repository lock.
+// Appenders announce themselves, append, apply their own records to the index and sign off with the version change their
+// append made. When the last one signs off, the indexed version follows the chain of those changes. A write from anyone
+// else breaks the chain, so the indexed version stops short of the file and the next read reloads. Until then readers
+// keep serving the index, which is at most the in-flight appends behind.
+final class IndexTracker {
+    private final RecordStore<?> store;
+    private final HashMap<FileVersion, FileVersion> ownChanges = new HashMap<>();
+    private volatile FileVersion indexedVersion;
+    private volatile int appendsInFlight;
+    private boolean isFollowingAppends;
+
+    IndexTracker(RecordStore<?> store) {
+        this.store = store;
+    }
+
+    synchronized boolean beginAppend() {
+        if (appendsInFlight == 0) {
+            isFollowingAppends = indexedVersion != null && indexedVersion.equals(store.version());
+        }
+        appendsInFlight++;
+        return isFollowingAppends;
+    }
+
+    // Called with the change the append made once its records are in the index, or with null when it failed.
+    synchronized void endAppend(FileVersionChange indexedChange) {
+        if (indexedChange == null) {
+            isFollowingAppends = false;
+        } else {
+            ownChanges.put(indexedChange.before(), indexedChange.after());
+        }
+        appendsInFlight--;
+        if (appendsInFlight == 0) {
+            if (isFollowingAppends) {
+                FileVersion version = indexedVersion;
+                FileVersion next;
+                while ((next = ownChanges.remove(version)) != null) {
+                    version = next;
+                }
+                indexedVersion = version;
+            }
+            ownChanges.clear();
+            notifyAll();
+        }
+    }
+
+    boolean isIndexUsable() {
+        FileVersion version = indexedVersion;
+        return version != null && (appendsInFlight > 0 || version.equals(store.version()));
+    }
+
+    synchronized void reloadIfChanged(Runnable reload) {
+        while (indexedVersion == null && appendsInFlight > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (appendsInFlight > 0) {
+            return;
+        }
+        FileVersion currentVersion = store.version();
+        if (currentVersion.equals(indexedVersion)) {
+            return;
+        }
+        reload.run();
+        indexedVersion = currentVersion;
+    }
+}
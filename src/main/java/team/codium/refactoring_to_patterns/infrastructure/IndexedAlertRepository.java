@@ -0,0 +1,79 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Alert;
+import team.codium.refactoring_to_patterns.domain.AlertRepository;
+import team.codium.refactoring_to_patterns.domain.Property;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class IndexedAlertRepository implements AlertRepository {
+    private final RecordStore<Alert> alertStore;
+    private final AlertIndex alertIndex = new AlertIndex();
+    private final IndexTracker indexTracker;
+
+    public IndexedAlertRepository(String alertsFile) {
+        this(new JsonArrayFile<>(alertsFile, Alert.class));
+    }
+
+    public IndexedAlertRepository(RecordStore<Alert> alertStore) {
+        this.alertStore = alertStore;
+        this.indexTracker = new IndexTracker(alertStore);
+    }
+
+    @Override
+    public List<Alert> findMatching(Property property) {
+        load();
+        synchronized (this) {
+            return alertIndex.findMatching(property);
+        }
+    }
+
+    @Override
+    public List<List<Alert>> findMatchingAll(List<Property> properties) {
+        load();
+        synchronized (this) {
+            return alertIndex.findMatchingAll(properties);
+        }
+    }
+
+    @Override
+    public void add(Alert alert) {
+        addAll(List.of(alert));
+    }
+
+    @Override
+    public void addAll(List<Alert> alerts) {
+        boolean isFollowingAppends = indexTracker.beginAppend();
+        FileVersionChange indexedChange = null;
+        try {
+            FileVersionChange change = alertStore.appendAll(alerts);
+            if (isFollowingAppends) {
+                synchronized (this) {
+                    alertIndex.addAll(alerts);
+                }
+            }
+            indexedChange = change;
+        } finally {
+            indexTracker.endAppend(indexedChange);
+        }
+    }
+
+    public void load() {
+        if (!indexTracker.isIndexUsable()) {
+            indexTracker.reloadIfChanged(this::reload);
+        }
+    }
+
+    private void reload() {
+        List<Alert> storedAlerts;
+        try (Stream<Alert> alerts = alertStore.stream()) {
+            storedAlerts = alerts.collect(Collectors.toList());
+        }
+        synchronized (this) {
+            alertIndex.clear();
+            alertIndex.addAll(storedAlerts);
+        }
+    }
+}
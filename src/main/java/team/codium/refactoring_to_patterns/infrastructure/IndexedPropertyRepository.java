@@ -0,0 +1,250 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class IndexedPropertyRepository implements VersionedPropertyRepository {
+    private final RecordStore<Property> propertyStore;
+    private final RangeFilter rangeFilter;
+    private final PartitionedScan partitionedScan;
+    private final IndexTracker indexTracker;
+    private final Object indexUpdates = new Object();
+    private volatile AtomicReferenceArray<PostalCodeBucket> propertiesByPostalCode = new AtomicReferenceArray<>(0);
+    private volatile ConcurrentSkipListSet<String> indexedPostalCodes = new ConcurrentSkipListSet<>();
+
+    public IndexedPropertyRepository(String propertiesFile) {
+        this(new JsonArrayFile<>(propertiesFile, Property.class));
+    }
+
+    public IndexedPropertyRepository(RecordStore<Property> propertyStore) {
+        this(propertyStore, RangeFilter.best());
+    }
+
+    public IndexedPropertyRepository(RecordStore<Property> propertyStore, RangeFilter rangeFilter) {
+        this(propertyStore, rangeFilter, PartitionedScan.sequential());
+    }
+
+    public IndexedPropertyRepository(RecordStore<Property> propertyStore, RangeFilter rangeFilter, PartitionedScan partitionedScan) {
+        this.propertyStore = propertyStore;
+        this.rangeFilter = rangeFilter;
+        this.partitionedScan = partitionedScan;
+        this.indexTracker = new IndexTracker(propertyStore);
+    }
+
+    @Override
+    public Stream<Property> find(String postalCode, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        return matching(bucketOf(currentIndex(), postalCode), priceRange, roomRange, squareMetersRange).stream();
+    }
+
+    // Walks the sorted postal codes once, visiting only the buckets the selection covers. Every bucket yields its matches
+    // ordered by price, and the stable sort over those runs merges them into the price order of a single-code search.
+    @Override
+    public Stream<Property> find(PostalCodeSelection postalCodes, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        AtomicReferenceArray<PostalCodeBucket> bucketsByPostalCode = currentIndex();
+        ArrayList<Property> matches = new ArrayList<>();
+        int runs = 0;
+        for (String postalCode : indexedPostalCodesIn(postalCodes)) {
+            List<Property> postalCodeMatches = matching(bucketOf(bucketsByPostalCode, postalCode), priceRange, roomRange, squareMetersRange);
+            if (!postalCodeMatches.isEmpty()) {
+                matches.addAll(postalCodeMatches);
+                runs++;
+            }
+        }
+        if (runs > 1) {
+            matches.sort(Comparator.comparingInt(Property::getPrice));
+        }
+        return matches.stream();
+    }
+
+    @Override
+    public void add(Property property) {
+        addAll(List.of(property));
+    }
+
+    // The append runs outside any lock so a group commit can batch concurrent callers. Buckets are immutable and replaced
+    // whole, so readers never wait for a writer; they see a bucket before or after it.
+    @Override
+    public FileVersionChange append(List<Property> properties) {
+        boolean isFollowingAppends = indexTracker.beginAppend();
+        FileVersionChange indexedChange = null;
+        try {
+            FileVersionChange change = propertyStore.appendAll(properties);
+            if (isFollowingAppends) {
+                synchronized (indexUpdates) {
+                    propertiesByPostalCode = indexAll(propertiesByPostalCode, indexedPostalCodes, properties);
+                }
+            }
+            indexedChange = change;
+            return change;
+        } finally {
+            indexTracker.endAppend(indexedChange);
+        }
+    }
+
+    @Override
+    public FileVersion version() {
+        return propertyStore.version();
+    }
+
+    public void load() {
+        currentIndex();
+    }
+
+    private Iterable<String> indexedPostalCodesIn(PostalCodeSelection postalCodes) {
+        if (!postalCodes.isPrefix()) {
+            return postalCodes.postalCodes();
+        }
+        NavigableSet<String> sortedPostalCodes = indexedPostalCodes;
+        return sortedPostalCodes.subSet(postalCodes.prefix(), true, postalCodes.prefix() + Character.MAX_VALUE, false);
+    }
+
+    private static PostalCodeBucket bucketOf(AtomicReferenceArray<PostalCodeBucket> bucketsByPostalCode, String postalCode) {
+        int postalCodeId = PostalCodeDictionary.find(postalCode);
+        return postalCodeId == PostalCodeDictionary.NOT_FOUND || postalCodeId >= bucketsByPostalCode.length()
+                ? null : bucketsByPostalCode.get(postalCodeId);
+    }
+
+    private List<Property> matching(PostalCodeBucket bucket, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        if (bucket == null) {
+            return List.of();
+        }
+        int from = priceRange.getMinimumPrice() == null ? 0 : bucket.firstIndexWithPriceAtLeast(priceRange.getMinimumPrice());
+        int to = priceRange.getMaximumPrice() == null ? bucket.size() : bucket.firstIndexWithPriceAbove(priceRange.getMaximumPrice());
+        if (from >= to) {
+            return List.of();
+        }
+        RangeFilter.ColumnRange rooms = RangeFilter.ColumnRange.of(bucket.rooms(), roomRange);
+        RangeFilter.ColumnRange squareMeters = RangeFilter.ColumnRange.of(bucket.squareMeters(), squareMetersRange);
+        return partitionedScan.collect(from, to, (partitionFrom, partitionTo, matches) -> {
+            long[] selection = rangeFilter.select(partitionFrom, partitionTo, rooms, squareMeters);
+            for (int index = partitionFrom; index < partitionTo; index++) {
+                if (RangeFilter.isSelected(selection, index - partitionFrom)) {
+                    matches.add(bucket.sortedByPrice()[index]);
+                }
+            }
+        });
+    }
+
+    private AtomicReferenceArray<PostalCodeBucket> currentIndex() {
+        if (!indexTracker.isIndexUsable()) {
+            indexTracker.reloadIfChanged(() -> {
+                ConcurrentSkipListSet<String> reloadedPostalCodes = new ConcurrentSkipListSet<>();
+                try (Stream<Property> storedProperties = propertyStore.stream()) {
+                    propertiesByPostalCode = indexAll(new AtomicReferenceArray<>(0), reloadedPostalCodes, storedProperties.collect(Collectors.toList()));
+                }
+                indexedPostalCodes = reloadedPostalCodes;
+            });
+        }
+        return propertiesByPostalCode;
+    }
+
+    // Buckets are indexed by postal code id. The array is only replaced when a new postal code does not fit, and the
+    // callers publish the returned array. A postal code joins the sorted set once its bucket is in place.
+    private static AtomicReferenceArray<PostalCodeBucket> indexAll(AtomicReferenceArray<PostalCodeBucket> propertiesByPostalCode,
+                                                                   NavigableSet<String> sortedPostalCodes, List<Property> properties) {
+        IntKeyedMap<List<Property>> newPropertiesByPostalCode = new IntKeyedMap<>();
+        ArrayList<Integer> postalCodeIds = new ArrayList<>();
+        int highestPostalCodeId = propertiesByPostalCode.length() - 1;
+        for (Property property : properties) {
+            int postalCodeId = property.getPostalCodeId();
+            List<Property> newProperties = newPropertiesByPostalCode.get(postalCodeId);
+            if (newProperties == null) {
+                newProperties = new ArrayList<>();
+                newPropertiesByPostalCode.put(postalCodeId, newProperties);
+                postalCodeIds.add(postalCodeId);
+                highestPostalCodeId = Math.max(highestPostalCodeId, postalCodeId);
+            }
+            newProperties.add(property);
+        }
+        AtomicReferenceArray<PostalCodeBucket> index = propertiesByPostalCode;
+        if (highestPostalCodeId >= index.length()) {
+            index = new AtomicReferenceArray<>(Math.max(highestPostalCodeId + 1, index.length() * 2));
+            for (int postalCodeId = 0; postalCodeId < propertiesByPostalCode.length(); postalCodeId++) {
+                index.set(postalCodeId, propertiesByPostalCode.get(postalCodeId));
+            }
+        }
+        for (int postalCodeId : postalCodeIds) {
+            PostalCodeBucket bucket = index.get(postalCodeId);
+            index.set(postalCodeId, (bucket == null ? PostalCodeBucket.EMPTY : bucket).with(newPropertiesByPostalCode.get(postalCodeId)));
+            if (bucket == null) {
+                sortedPostalCodes.add(PostalCodeDictionary.decode(postalCodeId));
+            }
+        }
+        return index;
+    }
+
+    private record PostalCodeBucket(Property[] sortedByPrice, int[] prices, int[] rooms, int[] squareMeters) {
+        static final PostalCodeBucket EMPTY = new PostalCodeBucket(new Property[0], new int[0], new int[0], new int[0]);
+
+        // Only the new properties are sorted; they are then merged into the sorted columns in one pass, so adding to a
+        // bucket costs a copy of it rather than a sort of it. On equal prices the properties already there come first.
+        PostalCodeBucket with(List<Property> newProperties) {
+            Property[] added = newProperties.toArray(Property[]::new);
+            Arrays.sort(added, Comparator.comparingInt(Property::getPrice));
+            int size = sortedByPrice.length + added.length;
+            Property[] merged = new Property[size];
+            int[] mergedPrices = new int[size];
+            int[] mergedRooms = new int[size];
+            int[] mergedSquareMeters = new int[size];
+            int existing = 0;
+            int next = 0;
+            for (int index = 0; index < size; index++) {
+                if (next == added.length || (existing < sortedByPrice.length && prices[existing] <= added[next].getPrice())) {
+                    merged[index] = sortedByPrice[existing];
+                    mergedPrices[index] = prices[existing];
+                    mergedRooms[index] = rooms[existing];
+                    mergedSquareMeters[index] = squareMeters[existing];
+                    existing++;
+                } else {
+                    Property property = added[next++];
+                    merged[index] = property;
+                    mergedPrices[index] = property.getPrice();
+                    mergedRooms[index] = property.getNumberOfRooms();
+                    mergedSquareMeters[index] = property.getSquareMeters();
+                }
+            }
+            return new PostalCodeBucket(merged, mergedPrices, mergedRooms, mergedSquareMeters);
+        }
+
+        int size() {
+            return prices.length;
+        }
+
+        int firstIndexWithPriceAtLeast(int price) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prices[middle] < price) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        int firstIndexWithPriceAbove(int price) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prices[middle] <= price) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.User;
+import team.codium.refactoring_to_patterns.domain.UserRepository;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class IndexedUserRepository implements UserRepository {
+    private static final Duration DEFAULT_REFRESH_CHECK_INTERVAL = Duration.ofSeconds(1);
+
+    private final RecordStore<User> userStore;
+    private final long refreshCheckIntervalNanos;
+    private volatile IntKeyedMap<User> usersById;
+    private FileVersion loadedVersion;
+    private volatile long lastRefreshCheck;
+
+    public IndexedUserRepository(String usersFile) {
+        this(new JsonArrayFile<>(usersFile, User.class), DEFAULT_REFRESH_CHECK_INTERVAL);
+    }
+
+    public IndexedUserRepository(RecordStore<User> userStore, Duration refreshCheckInterval) {
+        this.userStore = userStore;
+        this.refreshCheckIntervalNanos = refreshCheckInterval.toNanos();
+    }
+
+    @Override
+    public Optional<User> findById(int id) {
+        return Optional.ofNullable(users().get(id));
+    }
+
+    @Override
+    public UserRepository snapshot() {
+        return new Snapshot(users());
+    }
+
+    private IntKeyedMap<User> users() {
+        IntKeyedMap<User> users = usersById;
+        if (users != null && System.nanoTime() - lastRefreshCheck < refreshCheckIntervalNanos) {
+            return users;
+        }
+        return refreshIfChanged();
+    }
+
+    private synchronized IntKeyedMap<User> refreshIfChanged() {
+        lastRefreshCheck = System.nanoTime();
+        FileVersion currentVersion = userStore.version();
+        if (usersById != null && currentVersion.equals(loadedVersion)) {
+            return usersById;
+        }
+        IntKeyedMap<User> users = new IntKeyedMap<>();
+        try (Stream<User> storedUsers = userStore.stream()) {
+            storedUsers.forEach(user -> users.put(user.getId(), user));
+        }
+        loadedVersion = currentVersion;
+        usersById = users;
+        return users;
+    }
+
+    private record Snapshot(IntKeyedMap<User> usersById) implements UserRepository {
+        @Override
+        public Optional<User> findById(int id) {
+            return Optional.ofNullable(usersById.get(id));
+        }
+    }
+}
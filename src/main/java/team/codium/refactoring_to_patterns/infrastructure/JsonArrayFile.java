@@ -0,0 +1,196 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class JsonArrayFile<T> implements RecordStore<T> {
+    private final Path file;
+    private final Class<T> type;
+    private final Gson gson = RecordGson.create();
+
+    public JsonArrayFile(String file, Class<T> type) {
+        this.file = Paths.get(file);
+        this.type = type;
+    }
+
+    @Override
+    public Stream<T> stream() {
+        FileVersion openedVersion = version();
+        JsonReader reader;
+        try {
+            reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return Stream.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Iterator<T> records = new RecordIterator(reader, openedVersion);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void append(T record) {
+        appendAll(List.of(record));
+    }
+
+    @Override
+    public FileVersionChange appendAll(List<T> records) {
+        if (records.isEmpty()) {
+            return FileVersionChange.none(version());
+        }
+        String json = records.stream().map(gson::toJson).collect(Collectors.joining(","));
+        ReentrantLock writer = FileLocks.forPath(file);
+        writer.lock();
+        try (RandomAccessFile content = new RandomAccessFile(file.toFile(), "rw")) {
+            FileLock lock = FileLocks.lockExclusively(content.getChannel());
+            try {
+                FileVersion before = version();
+                appendLocked(content, json);
+                return new FileVersionChange(before, version());
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    private void appendLocked(RandomAccessFile content, String json) throws IOException {
+        long closingBracket = lastNonWhitespace(content, content.length());
+        if (closingBracket < 0) {
+            content.setLength(0);
+            content.write(("[" + json + "]").getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        long lastElement = lastNonWhitespace(content, closingBracket);
+        if (lastElement < 0 || readByte(content, closingBracket) != ']') {
+            throw new JsonSyntaxException(file + " does not end with a JSON array, refusing to append to it");
+        }
+        boolean isEmpty = readByte(content, lastElement) == '[';
+        content.seek(closingBracket);
+        content.write(((isEmpty ? "" : ",") + json + "]").getBytes(StandardCharsets.UTF_8));
+        content.setLength(content.getFilePointer());
+    }
+
+    @Override
+    public void force() {
+        FileLocks.force(file);
+    }
+
+    @Override
+    public FileVersion version() {
+        return FileVersion.of(file);
+    }
+
+    private static long lastNonWhitespace(RandomAccessFile content, long before) throws IOException {
+        long position = before - 1;
+        while (position >= 0 && Character.isWhitespace(readByte(content, position))) {
+            position--;
+        }
+        return position;
+    }
+
+    private static int readByte(RandomAccessFile content, long position) throws IOException {
+        content.seek(position);
+        return content.read();
+    }
+
+    // An append rewrites the end of the file in place, so a reader racing with it may run out of input in the middle of a
+    // record. When the file has changed since the reader opened it, the records read up to that point are a consistent
+    // prefix and reading simply stops there; when it has not, the file itself is corrupt and that is reported.
+    private class RecordIterator implements Iterator<T> {
+        private final JsonReader reader;
+        private final FileVersion openedVersion;
+        private boolean isInsideArray;
+        private T nextRecord;
+        private boolean isExhausted;
+
+        RecordIterator(JsonReader reader, FileVersion openedVersion) {
+            this.reader = reader;
+            this.openedVersion = openedVersion;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextRecord == null && !isExhausted) {
+                nextRecord = read();
+                isExhausted = nextRecord == null;
+            }
+            return nextRecord != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T record = nextRecord;
+            nextRecord = null;
+            return record;
+        }
+
+        private T read() {
+            try {
+                if (!isInsideArray) {
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        throw new JsonSyntaxException(file + " does not hold a JSON array");
+                    }
+                    reader.beginArray();
+                    isInsideArray = true;
+                }
+                return reader.hasNext() ? gson.fromJson(reader, type) : null;
+            } catch (EOFException e) {
+                return isInsideArray ? endOfConcurrentAppend(e) : null;
+            } catch (MalformedJsonException e) {
+                return endOfConcurrentAppend(e);
+            } catch (JsonParseException e) {
+                if (e.getCause() instanceof EOFException || e.getCause() instanceof MalformedJsonException) {
+                    return endOfConcurrentAppend(e);
+                }
+                throw e;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private T endOfConcurrentAppend(Exception e) {
+            if (openedVersion.equals(version())) {
+                throw new JsonSyntaxException(file + " is not a valid JSON array", e);
+            }
+            return null;
+        }
+    }
+}
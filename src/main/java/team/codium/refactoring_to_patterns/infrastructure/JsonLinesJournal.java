@@ -0,0 +1,308 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import com.google.gson.JsonSyntaxException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Appends and compaction take the OS lock on a sidecar lock file rather than on the journal itself. Compaction replaces
+// the journal with a new file, and a lock on the old one would not stop another process that opened it just before.
+public class JsonLinesJournal<T> implements RecordStore<T>, AutoCloseable {
+    private final Path file;
+    private final Path lockFile;
+    private final RecordCodec<T> codec;
+    private final Function<T, ?> identity;
+    private ScheduledExecutorService compactionScheduler;
+    private long appendsSinceCompaction;
+
+    public JsonLinesJournal(String file, Class<T> type, Function<T, ?> identity) {
+        this(file, new GsonRecordCodec<>(type), identity);
+    }
+
+    public JsonLinesJournal(String file, RecordCodec<T> codec) {
+        this(file, codec, null);
+    }
+
+    public JsonLinesJournal(String file, RecordCodec<T> codec, Function<T, ?> identity) {
+        this.file = Paths.get(file);
+        this.lockFile = this.file.resolveSibling(this.file.getFileName() + ".lock");
+        this.codec = codec;
+        this.identity = identity;
+    }
+
+    @Override
+    public Stream<T> stream() {
+        BufferedReader reader;
+        try {
+            reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return Stream.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new RecordIterator(reader), Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void append(T record) {
+        appendAll(List.of(record));
+    }
+
+    @Override
+    public synchronized FileVersionChange appendAll(List<T> records) {
+        if (records.isEmpty()) {
+            return FileVersionChange.none(version());
+        }
+        StringBuilder lines = new StringBuilder();
+        for (T record : records) {
+            lines.append(codec.encode(record)).append('\n');
+        }
+        ReentrantLock writer = FileLocks.forPath(file);
+        writer.lock();
+        try (FileChannel lockChannel = openLockFile()) {
+            FileLock lock = FileLocks.lockExclusively(lockChannel);
+            FileVersionChange change;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileVersion before = version();
+                channel.position(dropTornTail(channel));
+                ByteBuffer content = StandardCharsets.UTF_8.encode(CharBuffer.wrap(lines));
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                change = new FileVersionChange(before, version());
+            } finally {
+                lock.release();
+            }
+            appendsSinceCompaction += records.size();
+            return change;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    @Override
+    public void force() {
+        FileLocks.force(file);
+    }
+
+    @Override
+    public FileVersion version() {
+        return FileVersion.of(file);
+    }
+
+    public synchronized void compact() {
+        ReentrantLock writer = FileLocks.forPath(file);
+        writer.lock();
+        try (FileChannel lockChannel = openLockFile()) {
+            FileLock lock = FileLocks.lockExclusively(lockChannel);
+            try {
+                compactLocked();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writer.unlock();
+        }
+    }
+
+    private void compactLocked() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        Iterable<T> recordsToKeep = recordsToKeep();
+        Path compactedFile = file.resolveSibling(file.getFileName() + ".compacting");
+        try (BufferedWriter writer = Files.newBufferedWriter(compactedFile, StandardCharsets.UTF_8)) {
+            for (T record : recordsToKeep) {
+                writer.write(codec.encode(record));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(compactedFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        appendsSinceCompaction = 0;
+    }
+
+    public synchronized void compactEvery(Duration period) {
+        if (compactionScheduler != null) {
+            compactionScheduler.shutdownNow();
+        }
+        compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-compaction-" + file.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionScheduler.scheduleWithFixedDelay(this::compactIfAppended, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (compactionScheduler != null) {
+            compactionScheduler.shutdownNow();
+            compactionScheduler = null;
+        }
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    // The latest record of each identity takes the place of its first one, so the journal keeps its order.
+    private Iterable<T> recordsToKeep() {
+        try (Stream<T> records = stream()) {
+            if (identity == null) {
+                return records.collect(Collectors.toList());
+            }
+            LinkedHashMap<Object, T> latestRecords = new LinkedHashMap<>();
+            records.forEach(record -> latestRecords.put(identity.apply(record), record));
+            return latestRecords.values();
+        }
+    }
+
+    private synchronized void compactIfAppended() {
+        if (appendsSinceCompaction > 0) {
+            compact();
+        }
+    }
+
+    // Every append writes whole lines, so a last line without its newline is an append that never completed and was never
+    // acknowledged. It is cut off before the next append rather than having the new records glued onto it, unless it
+    // holds a whole record, as a hand-written file might, in which case it only gets its newline.
+    private long dropTornTail(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long end = size;
+        ByteBuffer lastByte = ByteBuffer.allocate(1);
+        while (end > 0) {
+            lastByte.clear();
+            channel.read(lastByte, end - 1);
+            if (lastByte.get(0) == '\n') {
+                break;
+            }
+            end--;
+        }
+        if (end == size) {
+            return size;
+        }
+        ByteBuffer tail = ByteBuffer.allocate((int) (size - end));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, end + tail.position()) < 0) {
+                break;
+            }
+        }
+        tail.flip();
+        if (isRecord(StandardCharsets.UTF_8.decode(tail).toString())) {
+            channel.write(ByteBuffer.wrap(new byte[]{'\n'}), size);
+            return size + 1;
+        }
+        channel.truncate(end);
+        return end;
+    }
+
+    private boolean isRecord(String line) {
+        try {
+            return !line.isBlank() && codec.decode(line) != null;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Only the last line may fail to decode: it is either a torn append or one that a concurrent writer has not finished
+    // yet. Any earlier line that does not decode means the journal itself is corrupt, and that is reported rather than
+    // skipped, so that neither a search nor a compaction quietly drops acknowledged records.
+    private class RecordIterator implements Iterator<T> {
+        private final BufferedReader reader;
+        private String nextLine;
+        private long lineNumber;
+        private T nextRecord;
+
+        RecordIterator(BufferedReader reader) {
+            this.reader = reader;
+            this.nextLine = readLine();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextRecord == null && nextLine != null) {
+                String line = nextLine;
+                lineNumber++;
+                nextLine = readLine();
+                if (!line.isBlank()) {
+                    nextRecord = decode(line, nextLine == null);
+                }
+            }
+            return nextRecord != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T record = nextRecord;
+            nextRecord = null;
+            return record;
+        }
+
+        private T decode(String line, boolean isLastLine) {
+            try {
+                return codec.decode(line);
+            } catch (RuntimeException e) {
+                if (isLastLine) {
+                    return null;
+                }
+                throw new JsonSyntaxException(file + " has a corrupt record on line " + lineNumber, e);
+            }
+        }
+
+        private String readLine() {
+            try {
+                return reader.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import com.google.gson.stream.JsonWriter;
+import team.codium.refactoring_to_patterns.domain.LogEvent;
+import team.codium.refactoring_to_patterns.domain.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Writes every event as one JSON object per line. Events are written field by field straight from the LogEvent, so a
+// RingBufferLogger in front of it hands over its recycled slots without building a map for each of them.
+public class JsonLinesLogger implements Logger, AutoCloseable {
+    private final Writer writer;
+    private JsonWriter json;
+    private final LogEvent.FieldVisitor fields = new LogEvent.FieldVisitor() {
+        @Override
+        public void field(String key, int value) {
+            try {
+                json.name(key).value(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void field(String key, Object value) {
+            try {
+                json.name(key);
+                if (value == null) {
+                    json.nullValue();
+                } else if (value instanceof Number number) {
+                    json.value(number);
+                } else if (value instanceof Boolean bool) {
+                    json.value(bool);
+                } else {
+                    json.value(value.toString());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    public JsonLinesLogger(Writer writer) {
+        this.writer = writer;
+        this.json = newJsonWriter(writer);
+    }
+
+    // An event that fails halfway leaves its object open, so its line is ended and the next event starts on a fresh
+    // JsonWriter instead of failing on the broken one.
+    @Override
+    public synchronized void publish(LogEvent event) {
+        boolean written = false;
+        try {
+            json.beginObject();
+            event.forEachField(fields);
+            json.endObject();
+            written = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (!written) {
+                json = newJsonWriter(writer);
+            }
+            try {
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void log(HashMap<String, Object> data) {
+        LogEvent event = LogEvent.intoMap();
+        data.forEach(event::put);
+        publish(event);
+    }
+
+    // The lines go to the writer and nothing is kept in memory.
+    @Override
+    public ArrayList<HashMap<String, Object>> getLoggedData() {
+        throw new UnsupportedOperationException("JsonLinesLogger does not keep the logged data");
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JsonWriter newJsonWriter(Writer writer) {
+        JsonWriter json = new JsonWriter(writer);
+        json.setLenient(true);
+        json.setSerializeNulls(true);
+        return json;
+    }
+}
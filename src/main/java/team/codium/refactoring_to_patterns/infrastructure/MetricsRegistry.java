@@ -0,0 +1,56 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Metrics;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MetricsRegistry implements Metrics {
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void registerTimers(String... names) {
+        for (String name : names) {
+            histograms.putIfAbsent(name, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void recordLatency(String name, long nanos) {
+        histograms.computeIfAbsent(name, histogramName -> new LatencyHistogram()).record(nanos);
+    }
+
+    @Override
+    public void increment(String name, long amount) {
+        counters.computeIfAbsent(name, counterName -> new LongAdder()).add(amount);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            throw new IllegalArgumentException(name + " is not a registered timer");
+        }
+        return histogram;
+    }
+
+    public long counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public Set<String> histogramNames() {
+        return new TreeSet<>(histograms.keySet());
+    }
+
+    public Set<String> counterNames() {
+        return new TreeSet<>(counters.keySet());
+    }
+}
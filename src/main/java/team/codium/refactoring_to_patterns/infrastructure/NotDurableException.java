@@ -0,0 +1,18 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+// The records are in the file but could not be forced to disk. Appending them again would store them twice; forcing the
+// store again is what may still make them durable.
+public class NotDurableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient FileVersionChange change;
+
+    public NotDurableException(FileVersionChange change, RuntimeException cause) {
+        super("The records were written but could not be forced to disk", cause);
+        this.change = change;
+    }
+
+    public FileVersionChange change() {
+        return change;
+    }
+}
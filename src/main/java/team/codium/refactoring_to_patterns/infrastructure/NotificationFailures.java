@@ -0,0 +1,48 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.LogEvent;
+import team.codium.refactoring_to_patterns.domain.Logger;
+import team.codium.refactoring_to_patterns.domain.Metrics;
+
+// Reports notifications the dispatchers could not send, so a failing sender shows up in the log and the counters
+// instead of silently dropping messages. Reporting never throws, as it runs on the dispatchers' own threads.
+final class NotificationFailures {
+    static final String FAILED_BATCHES = "notifications.failedBatches";
+    static final String FAILED_MESSAGES = "notifications.failedMessages";
+
+    private final Logger logger;
+    private final Metrics metrics;
+
+    NotificationFailures(Logger logger, Metrics metrics) {
+        this.logger = logger;
+        this.metrics = metrics;
+    }
+
+    void batchFailed(String channel, int messages, RuntimeException error) {
+        metrics.increment(FAILED_BATCHES, 1);
+        log(channel, "batch of " + messages, error);
+    }
+
+    void messageFailed(String channel, Object message, RuntimeException error) {
+        metrics.increment(FAILED_MESSAGES, 1);
+        log(channel, message, error);
+    }
+
+    private void log(String channel, Object notification, RuntimeException error) {
+        if (logger == null) {
+            return;
+        }
+        try {
+            LogEvent event = logger.claim();
+            try {
+                event.put("failedNotification", channel);
+                event.put("notification", notification);
+                event.put("error", error.toString());
+            } finally {
+                logger.publish(event);
+            }
+        } catch (RuntimeException ignored) {
+            // The metrics above already count the failure; a broken logger must not stop the remaining sends.
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+// Keeps every listing as a fixed-width record in direct buffers and only materializes the properties a search returns,
+// so the heap holds a few bytes per listing instead of a Property, its strings and their headers. The store grows one
+// chunk at a time and never copies the records it already has. The rows of every postal code are kept ordered by price,
+// so a search binary-searches its price range and returns the properties in the same order as the indexed repository.
+public class OffHeapPropertyRepository implements VersionedPropertyRepository {
+    private static final int DEFAULT_ROWS_PER_CHUNK = 1 << 16;
+
+    private final RecordStore<Property> propertyStore;
+    private final int rowsPerChunk;
+    private final IndexTracker indexTracker;
+    private final Object indexUpdates = new Object();
+    private volatile PropertyTable propertyTable;
+
+    public OffHeapPropertyRepository(String propertiesFile) {
+        this(new JsonArrayFile<>(propertiesFile, Property.class));
+    }
+
+    public OffHeapPropertyRepository(RecordStore<Property> propertyStore) {
+        this(propertyStore, DEFAULT_ROWS_PER_CHUNK);
+    }
+
+    public OffHeapPropertyRepository(RecordStore<Property> propertyStore, int rowsPerChunk) {
+        if (rowsPerChunk < 1) {
+            throw new IllegalArgumentException("A chunk must hold at least one row");
+        }
+        this.propertyStore = propertyStore;
+        this.rowsPerChunk = rowsPerChunk;
+        this.indexTracker = new IndexTracker(propertyStore);
+        this.propertyTable = new PropertyTable(rowsPerChunk);
+    }
+
+    @Override
+    public Stream<Property> find(String postalCode, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        ArrayList<Property> matches = new ArrayList<>();
+        collectMatches(currentTable(), postalCode, priceRange, roomRange, squareMetersRange, matches);
+        return matches.stream();
+    }
+
+    // Checks the store once and walks the table's sorted postal codes, visiting only the ones the selection covers. Every
+    // postal code yields its matches ordered by price, and the stable sort over those runs gives a single-code order.
+    @Override
+    public Stream<Property> find(PostalCodeSelection postalCodes, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        PropertyTable table = currentTable();
+        ArrayList<Property> matches = new ArrayList<>();
+        int runs = 0;
+        for (String postalCode : table.postalCodesIn(postalCodes)) {
+            int before = matches.size();
+            collectMatches(table, postalCode, priceRange, roomRange, squareMetersRange, matches);
+            if (matches.size() > before) {
+                runs++;
+            }
+        }
+        if (runs > 1) {
+            matches.sort(Comparator.comparingInt(Property::getPrice));
+        }
+        return matches.stream();
+    }
+
+    private static void collectMatches(PropertyTable table, String postalCode, PriceRange priceRange, RoomRange roomRange,
+                                       SquareMetersRange squareMetersRange, List<Property> matches) {
+        int postalCodeId = PostalCodeDictionary.find(postalCode);
+        if (postalCodeId == PostalCodeDictionary.NOT_FOUND) {
+            return;
+        }
+        int minimumPrice = priceRange.lowerBound();
+        int maximumPrice = priceRange.upperBound();
+        int minimumRooms = roomRange.lowerBound();
+        int maximumRooms = roomRange.upperBound();
+        int minimumSquareMeters = squareMetersRange.lowerBound();
+        int maximumSquareMeters = squareMetersRange.upperBound();
+        table.forEachRowOf(postalCodeId, minimumPrice, maximumPrice, row -> {
+            int rooms = row.getNumberOfRooms();
+            int squareMeters = row.getSquareMeters();
+            if (rooms >= minimumRooms && rooms <= maximumRooms && squareMeters >= minimumSquareMeters && squareMeters <= maximumSquareMeters) {
+                matches.add(row.toProperty());
+            }
+        });
+    }
+
+    @Override
+    public void add(Property property) {
+        addAll(List.of(property));
+    }
+
+    @Override
+    public FileVersionChange append(List<Property> properties) {
+        boolean isFollowingAppends = indexTracker.beginAppend();
+        FileVersionChange indexedChange = null;
+        try {
+            FileVersionChange change = propertyStore.appendAll(properties);
+            if (isFollowingAppends) {
+                synchronized (indexUpdates) {
+                    propertyTable.appendAll(properties);
+                }
+            }
+            indexedChange = change;
+            return change;
+        } finally {
+            indexTracker.endAppend(indexedChange);
+        }
+    }
+
+    @Override
+    public FileVersion version() {
+        return propertyStore.version();
+    }
+
+    public int size() {
+        return currentTable().size();
+    }
+
+    public long offHeapBytes() {
+        return currentTable().offHeapBytes();
+    }
+
+    private PropertyTable currentTable() {
+        if (!indexTracker.isIndexUsable()) {
+            indexTracker.reloadIfChanged(() -> {
+                PropertyTable reloaded = new PropertyTable(rowsPerChunk);
+                try (Stream<Property> storedProperties = propertyStore.stream()) {
+                    storedProperties.forEach(reloaded::write);
+                }
+                reloaded.index(0, reloaded.size());
+                propertyTable = reloaded;
+            });
+        }
+        return propertyTable;
+    }
+
+    interface RowVisitor {
+        void visit(Row row);
+    }
+
+    // A single writer appends while readers scan. A row becomes visible through its postal code's row list, which is
+    // replaced by a merged copy after the record bytes and any new chunk have been published.
+    private static class PropertyTable {
+        private static final int ID = 0;
+        private static final int PRICE = 4;
+        private static final int ROOMS = 8;
+        private static final int SQUARE_METERS = 12;
+        private static final int OWNER_ID = 16;
+        private static final int POSTAL_CODE_ID = 20;
+        private static final int DESCRIPTION_CHUNK = 24;
+        private static final int DESCRIPTION_OFFSET = 28;
+        private static final int DESCRIPTION_LENGTH = 32;
+        private static final int RECORD_BYTES = 36;
+        private static final int DESCRIPTION_CHUNK_BYTES = 1 << 20;
+        private static final int NO_DESCRIPTION = -1;
+
+        private final int rowsPerChunk;
+        private final ConcurrentSkipListSet<String> postalCodes = new ConcurrentSkipListSet<>();
+        private volatile ByteBuffer[] recordChunks = new ByteBuffer[0];
+        private volatile ByteBuffer[] descriptionChunks = new ByteBuffer[0];
+        private volatile RowList[] rowsByPostalCode = new RowList[0];
+        private volatile int size;
+        private volatile long offHeapBytes;
+        private int descriptionChunkUsed;
+
+        PropertyTable(int rowsPerChunk) {
+            this.rowsPerChunk = rowsPerChunk;
+        }
+
+        void appendAll(List<Property> properties) {
+            int firstRow = size;
+            properties.forEach(this::write);
+            index(firstRow, size);
+        }
+
+        int write(Property property) {
+            int row = size;
+            if (row / rowsPerChunk == recordChunks.length) {
+                recordChunks = withChunk(recordChunks, rowsPerChunk * RECORD_BYTES);
+            }
+            ByteBuffer chunk = recordChunks[row / rowsPerChunk];
+            int position = row % rowsPerChunk * RECORD_BYTES;
+            chunk.putInt(position + ID, property.getId());
+            chunk.putInt(position + PRICE, property.getPrice());
+            chunk.putInt(position + ROOMS, property.getNumberOfRooms());
+            chunk.putInt(position + SQUARE_METERS, property.getSquareMeters());
+            chunk.putInt(position + OWNER_ID, property.getOwnerId());
+            chunk.putInt(position + POSTAL_CODE_ID, property.getPostalCodeId());
+            writeDescription(chunk, position, property.getDescription());
+            size = row + 1;
+            return row;
+        }
+
+        // Sorts the new rows by postal code and then each postal code's rows by price, packing the sort key in the high
+        // half of a long and the row in the low half, and merges every run into its postal code's row list.
+        void index(int fromRow, int toRow) {
+            long[] byPostalCode = new long[toRow - fromRow];
+            for (int row = fromRow; row < toRow; row++) {
+                byPostalCode[row - fromRow] = (long) intAt(row, POSTAL_CODE_ID) << 32 | row;
+            }
+            Arrays.sort(byPostalCode);
+            int runStart = 0;
+            while (runStart < byPostalCode.length) {
+                int postalCodeId = (int) (byPostalCode[runStart] >>> 32);
+                int runEnd = runStart + 1;
+                while (runEnd < byPostalCode.length && (int) (byPostalCode[runEnd] >>> 32) == postalCodeId) {
+                    runEnd++;
+                }
+                long[] byPrice = new long[runEnd - runStart];
+                for (int index = runStart; index < runEnd; index++) {
+                    int row = (int) byPostalCode[index];
+                    byPrice[index - runStart] = (long) intAt(row, PRICE) << 32 | row;
+                }
+                Arrays.sort(byPrice);
+                rowsOf(postalCodeId).merge(byPrice, this);
+                runStart = runEnd;
+            }
+        }
+
+        void forEachRowOf(int postalCodeId, int minimumPrice, int maximumPrice, RowVisitor visitor) {
+            RowList[] rowLists = rowsByPostalCode;
+            if (postalCodeId >= rowLists.length || rowLists[postalCodeId] == null) {
+                return;
+            }
+            int[] rows = rowLists[postalCodeId].rows;
+            int to = firstRowPricedAbove(rows, maximumPrice);
+            Row row = new Row(this);
+            for (int index = firstRowPricedAbove(rows, minimumPrice - 1L); index < to; index++) {
+                row.moveTo(rows[index]);
+                visitor.visit(row);
+            }
+        }
+
+        Iterable<String> postalCodesIn(PostalCodeSelection selection) {
+            if (!selection.isPrefix()) {
+                return selection.postalCodes();
+            }
+            return postalCodes.subSet(selection.prefix(), true, selection.prefix() + Character.MAX_VALUE, false);
+        }
+
+        private int firstRowPricedAbove(int[] rows, long price) {
+            int low = 0;
+            int high = rows.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (intAt(rows[middle], PRICE) <= price) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int intAt(int row, int field) {
+            return recordChunks[row / rowsPerChunk].getInt(row % rowsPerChunk * RECORD_BYTES + field);
+        }
+
+        int size() {
+            return size;
+        }
+
+        long offHeapBytes() {
+            return offHeapBytes;
+        }
+
+        private void writeDescription(ByteBuffer chunk, int position, String description) {
+            if (description == null) {
+                chunk.putInt(position + DESCRIPTION_LENGTH, NO_DESCRIPTION);
+                return;
+            }
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            if (descriptionChunks.length == 0 || descriptionChunkUsed + bytes.length > descriptionChunks[descriptionChunks.length - 1].capacity()) {
+                descriptionChunks = withChunk(descriptionChunks, Math.max(DESCRIPTION_CHUNK_BYTES, bytes.length));
+                descriptionChunkUsed = 0;
+            }
+            descriptionChunks[descriptionChunks.length - 1].put(descriptionChunkUsed, bytes);
+            chunk.putInt(position + DESCRIPTION_CHUNK, descriptionChunks.length - 1);
+            chunk.putInt(position + DESCRIPTION_OFFSET, descriptionChunkUsed);
+            chunk.putInt(position + DESCRIPTION_LENGTH, bytes.length);
+            descriptionChunkUsed += bytes.length;
+        }
+
+        private RowList rowsOf(int postalCodeId) {
+            RowList[] rowLists = rowsByPostalCode;
+            if (postalCodeId >= rowLists.length) {
+                rowLists = Arrays.copyOf(rowLists, Math.max(postalCodeId + 1, rowLists.length * 2));
+            }
+            boolean isNewPostalCode = rowLists[postalCodeId] == null;
+            if (isNewPostalCode) {
+                rowLists[postalCodeId] = new RowList();
+            }
+            rowsByPostalCode = rowLists;
+            if (isNewPostalCode) {
+                postalCodes.add(PostalCodeDictionary.decode(postalCodeId));
+            }
+            return rowLists[postalCodeId];
+        }
+
+        // Only the array of chunk references is copied; the chunks themselves stay where they are.
+        private ByteBuffer[] withChunk(ByteBuffer[] chunks, int bytes) {
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            offHeapBytes += bytes;
+            return grown;
+        }
+    }
+
+    private static class RowList {
+        private volatile int[] rows = new int[0];
+
+        // New rows come after every existing one, so on equal prices the existing rows go first and the list stays in
+        // the order a stable sort by price of all rows would give.
+        void merge(long[] newRowsByPrice, PropertyTable table) {
+            int[] existing = rows;
+            int[] merged = new int[existing.length + newRowsByPrice.length];
+            int existingIndex = 0;
+            int newIndex = 0;
+            for (int index = 0; index < merged.length; index++) {
+                if (newIndex == newRowsByPrice.length
+                        || existingIndex < existing.length && table.intAt(existing[existingIndex], PropertyTable.PRICE) <= (int) (newRowsByPrice[newIndex] >> 32)) {
+                    merged[index] = existing[existingIndex++];
+                } else {
+                    merged[index] = (int) newRowsByPrice[newIndex++];
+                }
+            }
+            rows = merged;
+        }
+    }
+
+    // A flyweight over one record: it reads the fields in place and is moved from row to row instead of allocated per row.
+    static class Row {
+        private final PropertyTable table;
+        private ByteBuffer chunk;
+        private int position;
+
+        private Row(PropertyTable table) {
+            this.table = table;
+        }
+
+        private void moveTo(int row) {
+            chunk = table.recordChunks[row / table.rowsPerChunk];
+            position = row % table.rowsPerChunk * PropertyTable.RECORD_BYTES;
+        }
+
+        public int getId() {
+            return chunk.getInt(position + PropertyTable.ID);
+        }
+
+        public int getPrice() {
+            return chunk.getInt(position + PropertyTable.PRICE);
+        }
+
+        public int getNumberOfRooms() {
+            return chunk.getInt(position + PropertyTable.ROOMS);
+        }
+
+        public int getSquareMeters() {
+            return chunk.getInt(position + PropertyTable.SQUARE_METERS);
+        }
+
+        public int getOwnerId() {
+            return chunk.getInt(position + PropertyTable.OWNER_ID);
+        }
+
+        public String getPostalCode() {
+            return PostalCodeDictionary.decode(chunk.getInt(position + PropertyTable.POSTAL_CODE_ID));
+        }
+
+        public String getDescription() {
+            int length = chunk.getInt(position + PropertyTable.DESCRIPTION_LENGTH);
+            if (length == PropertyTable.NO_DESCRIPTION) {
+                return null;
+            }
+            byte[] description = new byte[length];
+            table.descriptionChunks[chunk.getInt(position + PropertyTable.DESCRIPTION_CHUNK)]
+                    .get(chunk.getInt(position + PropertyTable.DESCRIPTION_OFFSET), description);
+            return new String(description, StandardCharsets.UTF_8);
+        }
+
+        public Property toProperty() {
+            return new Property(getId(), getDescription(), getPostalCode(), getPrice(), getNumberOfRooms(), getSquareMeters(), getOwnerId());
+        }
+    }
+}
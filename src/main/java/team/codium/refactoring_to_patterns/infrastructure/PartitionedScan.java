@@ -0,0 +1,71 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class PartitionedScan {
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int sequentialThreshold;
+
+    public PartitionedScan(ForkJoinPool pool, int sequentialThreshold) {
+        this.pool = pool;
+        this.sequentialThreshold = sequentialThreshold;
+    }
+
+    public static PartitionedScan sequential() {
+        return new PartitionedScan(null, Integer.MAX_VALUE);
+    }
+
+    public static PartitionedScan onCommonPool(int sequentialThreshold) {
+        return new PartitionedScan(ForkJoinPool.commonPool(), sequentialThreshold);
+    }
+
+    <T> List<T> collect(int from, int to, Partition<T> partition) {
+        if (pool == null || to - from < sequentialThreshold) {
+            ArrayList<T> results = new ArrayList<>();
+            partition.collect(from, to, results);
+            return results;
+        }
+        int partitionSize = Math.max(sequentialThreshold / 2, (to - from) / (pool.getParallelism() * PARTITIONS_PER_THREAD));
+        return pool.invoke(new PartitionTask<>(from, to, Math.max(1, partitionSize), partition));
+    }
+
+    interface Partition<T> {
+        void collect(int from, int to, List<T> results);
+    }
+
+    private static class PartitionTask<T> extends RecursiveTask<List<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int partitionSize;
+        private final Partition<T> partition;
+
+        PartitionTask(int from, int to, int partitionSize, Partition<T> partition) {
+            this.from = from;
+            this.to = to;
+            this.partitionSize = partitionSize;
+            this.partition = partition;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (to - from <= partitionSize) {
+                ArrayList<T> results = new ArrayList<>();
+                partition.collect(from, to, results);
+                return results;
+            }
+            int middle = (from + to) >>> 1;
+            PartitionTask<T> right = new PartitionTask<>(middle, to, partitionSize, partition);
+            right.fork();
+            List<T> results = new PartitionTask<>(from, middle, partitionSize, partition).compute();
+            results.addAll(right.join());
+            return results;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// One file per postal code prefix, e.g. properties-04.json, each behind its own repository that is only created when
+// a record, a search or alert matching needs that shard.
+final class PostalCodeShards<R> {
+    private static final String EXTENSION = ".json";
+
+    private final Path directory;
+    private final String filePrefix;
+    private final int prefixLength;
+    private final Function<String, R> repositoryOfFile;
+    private final ConcurrentHashMap<String, R> repositoriesByShard = new ConcurrentHashMap<>();
+
+    PostalCodeShards(String directory, String filePrefix, int prefixLength, Function<String, R> repositoryOfFile) {
+        if (prefixLength < 1 || prefixLength > 5) {
+            throw new IllegalArgumentException("The shard prefix must have between 1 and 5 digits");
+        }
+        this.directory = Paths.get(directory);
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.filePrefix = filePrefix + "-";
+        this.prefixLength = prefixLength;
+        this.repositoryOfFile = repositoryOfFile;
+    }
+
+    String shardOf(String postalCode) {
+        return postalCode.substring(0, prefixLength);
+    }
+
+    R forPostalCode(String postalCode) {
+        return forShard(shardOf(postalCode));
+    }
+
+    R forShard(String shard) {
+        return repositoriesByShard.computeIfAbsent(shard, key -> repositoryOfFile.apply(directory.resolve(filePrefix + key + EXTENSION).toString()));
+    }
+
+    // The shards a postal code prefix can reach: a single one when the prefix is at least as long as a shard key,
+    // otherwise every stored shard that starts with it.
+    List<String> shardsWithPrefix(String prefix) {
+        if (prefix.length() >= prefixLength) {
+            return List.of(prefix.substring(0, prefixLength));
+        }
+        return storedShards().stream().filter(shard -> shard.startsWith(prefix)).collect(Collectors.toList());
+    }
+
+    List<String> storedShards() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(filePrefix) && name.endsWith(EXTENSION))
+                    .map(name -> name.substring(filePrefix.length(), name.length() - EXTENSION.length()))
+                    .filter(shard -> shard.length() == prefixLength)
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void loadAll(ForkJoinPool pool, Consumer<R> load) {
+        List<String> shards = storedShards();
+        pool.submit(() -> shards.parallelStream().forEach(shard -> load.accept(forShard(shard)))).join();
+    }
+}
@@ -2,9 +2,17 @@ package team.codium.refactoring_to_patterns.infrastructure;
 
 import team.codium.refactoring_to_patterns.domain.PushMessage;
 
+import java.util.List;
+
 public class PushSender {
     public void sendPushNotification(PushMessage message) {
         // Do not implement this code. Imagine the code is already here
 
     }
+
+    // Returns the messages the provider did not accept. It throws only when the provider accepted none of them.
+    public List<PushMessage> sendPushNotifications(List<PushMessage> messages) {
+        // Do not implement this code. Imagine the code is already here
+        return List.of();
+    }
 }
@@ -0,0 +1,29 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.BoundedRange;
+
+public interface RangeFilter {
+    long[] select(int from, int to, ColumnRange... ranges);
+
+    static RangeFilter scalar() {
+        return new ScalarRangeFilter();
+    }
+
+    static RangeFilter vectorized() {
+        return new VectorizedRangeFilter();
+    }
+
+    static RangeFilter best() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() ? vectorized() : scalar();
+    }
+
+    static boolean isSelected(long[] selection, int position) {
+        return (selection[position >>> 6] & (1L << position)) != 0;
+    }
+
+    record ColumnRange(int[] values, int minimum, int maximum) {
+        public static ColumnRange of(int[] values, BoundedRange range) {
+            return new ColumnRange(values, range.lowerBound(), range.upperBound());
+        }
+    }
+}
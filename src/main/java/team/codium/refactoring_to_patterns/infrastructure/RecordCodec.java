@@ -0,0 +1,7 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+public interface RecordCodec<T> {
+    String encode(T record);
+
+    T decode(String line);
+}
@@ -0,0 +1,105 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import team.codium.refactoring_to_patterns.domain.Alert;
+import team.codium.refactoring_to_patterns.domain.Property;
+
+import java.io.IOException;
+
+// Gson fills objects in without running their constructor, which would leave a Property without its postal code id, so
+// properties are read field by field and built through their constructor. They are written as plain Gson writes them.
+// Postal code ids are only valid inside this process, so an alert's id is left out of the file and derived again on read.
+final class RecordGson {
+    private RecordGson() {
+    }
+
+    static Gson create() {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(new PropertyAdapterFactory())
+                .setExclusionStrategies(new AlertPostalCodeIdExclusion())
+                .create();
+    }
+
+    private static class AlertPostalCodeIdExclusion implements ExclusionStrategy {
+        @Override
+        public boolean shouldSkipField(FieldAttributes field) {
+            return field.getDeclaringClass() == Alert.class && field.getName().equals("postalCodeId");
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> type) {
+            return false;
+        }
+    }
+
+    private static class PropertyAdapterFactory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != Property.class) {
+                return null;
+            }
+            return (TypeAdapter<T>) new PropertyAdapter(gson.getDelegateAdapter(this, TypeToken.get(Property.class)));
+        }
+    }
+
+    private static class PropertyAdapter extends TypeAdapter<Property> {
+        private final TypeAdapter<Property> fields;
+
+        PropertyAdapter(TypeAdapter<Property> fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public void write(JsonWriter out, Property property) throws IOException {
+            fields.write(out, property);
+        }
+
+        @Override
+        public Property read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            int id = 0;
+            String description = null;
+            String postalCode = null;
+            int price = 0;
+            int numberOfRooms = 0;
+            int squareMeters = 0;
+            int ownerId = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id" -> id = in.nextInt();
+                    case "description" -> description = nextStringOrNull(in);
+                    case "postalCode" -> postalCode = nextStringOrNull(in);
+                    case "price" -> price = in.nextInt();
+                    case "numberOfRooms" -> numberOfRooms = in.nextInt();
+                    case "squareMeters" -> squareMeters = in.nextInt();
+                    case "ownerId" -> ownerId = in.nextInt();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Property(id, description, postalCode, price, numberOfRooms, squareMeters, ownerId);
+        }
+
+        private static String nextStringOrNull(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return in.nextString();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface RecordStore<T> {
+    Stream<T> stream();
+
+    void append(T record);
+
+    FileVersionChange appendAll(List<T> records);
+
+    void force();
+
+    FileVersion version();
+}
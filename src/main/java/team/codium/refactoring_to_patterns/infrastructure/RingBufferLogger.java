@@ -0,0 +1,146 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.LogEvent;
+import team.codium.refactoring_to_patterns.domain.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class RingBufferLogger implements Logger, AutoCloseable {
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(30);
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final Logger sink;
+    private final Slot[] slots;
+    private final int mask;
+    // The closed flag lives in the sign bit of the next sequence, so an event is either claimed before the ring closes and
+    // drained by the consumer, or claimed after it and logged directly; none falls in between.
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+    private final Thread consumer;
+    private volatile long consumedSequence;
+
+    public RingBufferLogger(Logger sink, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two");
+        }
+        this.sink = sink;
+        this.slots = new Slot[capacity];
+        for (int slot = 0; slot < capacity; slot++) {
+            slots[slot] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.consumer = new Thread(this::consume, "ring-buffer-logger");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    // Blocks while the ring is full, so memory stays bounded at the cost of back-pressure on very bursty producers. Every
+    // claimed slot must be published, even when filling it fails, or the consumer waits for it forever.
+    @Override
+    public LogEvent claim() {
+        long sequence;
+        do {
+            sequence = nextSequence.get();
+            if (sequence < 0) {
+                return LogEvent.intoMap();
+            }
+        } while (!nextSequence.compareAndSet(sequence, sequence + 1));
+        while (sequence - consumedSequence >= slots.length) {
+            if (!consumer.isAlive()) {
+                return LogEvent.intoMap();
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        Slot slot = slots[(int) sequence & mask];
+        slot.sequence = sequence;
+        return slot;
+    }
+
+    @Override
+    public void publish(LogEvent event) {
+        if (event instanceof Slot slot) {
+            slot.published = slot.sequence;
+            return;
+        }
+        try {
+            sink.publish(event);
+        } catch (RuntimeException e) {
+            failedEvents.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void log(HashMap<String, Object> data) {
+        LogEvent event = claim();
+        try {
+            data.forEach(event::put);
+        } finally {
+            publish(event);
+        }
+    }
+
+    @Override
+    public ArrayList<HashMap<String, Object>> getLoggedData() {
+        return sink.getLoggedData();
+    }
+
+    public long failedEvents() {
+        return failedEvents.get();
+    }
+
+    public boolean awaitDrained(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long claimed = nextSequence.get() & ~CLOSED;
+        while (consumedSequence < claimed) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        nextSequence.getAndUpdate(sequence -> sequence | CLOSED);
+        try {
+            consumer.join(CLOSE_TIMEOUT.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        consumer.interrupt();
+    }
+
+    private void consume() {
+        long sequence = consumedSequence;
+        while (!Thread.currentThread().isInterrupted()) {
+            long claimed = nextSequence.get();
+            if (claimed < 0 && sequence == (claimed & ~CLOSED)) {
+                return;
+            }
+            Slot slot = slots[(int) sequence & mask];
+            if (slot.published != sequence) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                sink.publish(slot);
+            } catch (RuntimeException e) {
+                failedEvents.incrementAndGet();
+            }
+            slot.clear();
+            consumedSequence = ++sequence;
+        }
+    }
+
+    private static class Slot extends LogEvent {
+        private long sequence;
+        private volatile long published = -1;
+    }
+}
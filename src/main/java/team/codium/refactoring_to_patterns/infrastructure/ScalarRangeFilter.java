@@ -0,0 +1,25 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+class ScalarRangeFilter implements RangeFilter {
+    @Override
+    public long[] select(int from, int to, ColumnRange... ranges) {
+        long[] selection = new long[(to - from + 63) >>> 6];
+        for (int row = from; row < to; row++) {
+            if (isInEveryRange(row, ranges)) {
+                int position = row - from;
+                selection[position >>> 6] |= 1L << position;
+            }
+        }
+        return selection;
+    }
+
+    static boolean isInEveryRange(int row, ColumnRange[] ranges) {
+        for (ColumnRange range : ranges) {
+            int value = range.values()[row];
+            if (value < range.minimum() || value > range.maximum()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
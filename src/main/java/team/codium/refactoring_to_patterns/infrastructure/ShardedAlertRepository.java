@@ -0,0 +1,70 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Alert;
+import team.codium.refactoring_to_patterns.domain.AlertRepository;
+import team.codium.refactoring_to_patterns.domain.Property;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class ShardedAlertRepository implements AlertRepository {
+    private final PostalCodeShards<IndexedAlertRepository> shards;
+
+    public ShardedAlertRepository(String directory) {
+        this(directory, ShardedPropertyRepository.DEFAULT_PREFIX_LENGTH);
+    }
+
+    public ShardedAlertRepository(String directory, int prefixLength) {
+        this.shards = new PostalCodeShards<>(directory, "alerts", prefixLength, IndexedAlertRepository::new);
+    }
+
+    @Override
+    public List<Alert> findMatching(Property property) {
+        return shards.forPostalCode(property.getPostalCode()).findMatching(property);
+    }
+
+    @Override
+    public List<List<Alert>> findMatchingAll(List<Property> properties) {
+        LinkedHashMap<String, List<Integer>> propertiesByShard = new LinkedHashMap<>();
+        for (int index = 0; index < properties.size(); index++) {
+            propertiesByShard.computeIfAbsent(shards.shardOf(properties.get(index).getPostalCode()), shard -> new ArrayList<>()).add(index);
+        }
+        List<List<Alert>> matching = new ArrayList<>(Collections.nCopies(properties.size(), List.of()));
+        propertiesByShard.forEach((shard, indexes) -> {
+            List<Property> shardProperties = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                shardProperties.add(properties.get(index));
+            }
+            List<List<Alert>> shardMatching = shards.forShard(shard).findMatchingAll(shardProperties);
+            for (int i = 0; i < indexes.size(); i++) {
+                matching.set(indexes.get(i), shardMatching.get(i));
+            }
+        });
+        return matching;
+    }
+
+    @Override
+    public void add(Alert alert) {
+        addAll(List.of(alert));
+    }
+
+    @Override
+    public void addAll(List<Alert> alerts) {
+        LinkedHashMap<String, List<Alert>> alertsByShard = new LinkedHashMap<>();
+        for (Alert alert : alerts) {
+            alertsByShard.computeIfAbsent(shards.shardOf(alert.postalCode()), shard -> new ArrayList<>()).add(alert);
+        }
+        alertsByShard.forEach((shard, shardAlerts) -> shards.forShard(shard).addAll(shardAlerts));
+    }
+
+    public void loadShards(ForkJoinPool pool) {
+        shards.loadAll(pool, IndexedAlertRepository::load);
+    }
+
+    public List<String> storedShards() {
+        return shards.storedShards();
+    }
+}
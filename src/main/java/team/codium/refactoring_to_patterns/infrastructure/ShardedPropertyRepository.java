@@ -0,0 +1,78 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+public class ShardedPropertyRepository implements PropertyRepository {
+    public static final int DEFAULT_PREFIX_LENGTH = 2;
+
+    private final PostalCodeShards<IndexedPropertyRepository> shards;
+
+    public ShardedPropertyRepository(String directory) {
+        this(directory, DEFAULT_PREFIX_LENGTH);
+    }
+
+    public ShardedPropertyRepository(String directory, int prefixLength) {
+        this.shards = new PostalCodeShards<>(directory, "properties", prefixLength, IndexedPropertyRepository::new);
+    }
+
+    @Override
+    public Stream<Property> find(String postalCode, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        return shards.forPostalCode(postalCode).find(postalCode, priceRange, roomRange, squareMetersRange);
+    }
+
+    // Each shard returns its matches ordered by price, so when several shards answer their runs are merged by price.
+    @Override
+    public Stream<Property> find(PostalCodeSelection postalCodes, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        TreeSet<String> shardsToSearch = new TreeSet<>();
+        if (postalCodes.isPrefix()) {
+            shardsToSearch.addAll(shards.shardsWithPrefix(postalCodes.prefix()));
+        } else {
+            postalCodes.postalCodes().forEach(postalCode -> shardsToSearch.add(shards.shardOf(postalCode)));
+        }
+        ArrayList<Property> matches = new ArrayList<>();
+        int runs = 0;
+        for (String shard : shardsToSearch) {
+            int matchesBefore = matches.size();
+            try (Stream<Property> shardMatches = shards.forShard(shard).find(postalCodes, priceRange, roomRange, squareMetersRange)) {
+                shardMatches.forEach(matches::add);
+            }
+            if (matches.size() > matchesBefore) {
+                runs++;
+            }
+        }
+        if (runs > 1) {
+            matches.sort(Comparator.comparingInt(Property::getPrice));
+        }
+        return matches.stream();
+    }
+
+    @Override
+    public void add(Property property) {
+        addAll(List.of(property));
+    }
+
+    @Override
+    public void addAll(List<Property> properties) {
+        LinkedHashMap<String, List<Property>> propertiesByShard = new LinkedHashMap<>();
+        for (Property property : properties) {
+            propertiesByShard.computeIfAbsent(shards.shardOf(property.getPostalCode()), shard -> new ArrayList<>()).add(property);
+        }
+        propertiesByShard.forEach((shard, shardProperties) -> shards.forShard(shard).addAll(shardProperties));
+    }
+
+    public void loadShards(ForkJoinPool pool) {
+        shards.loadAll(pool, IndexedPropertyRepository::load);
+    }
+
+    public List<String> storedShards() {
+        return shards.storedShards();
+    }
+}
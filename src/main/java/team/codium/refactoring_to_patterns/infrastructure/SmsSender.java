@@ -2,8 +2,16 @@ package team.codium.refactoring_to_patterns.infrastructure;
 
 import team.codium.refactoring_to_patterns.domain.SmsMessage;
 
+import java.util.List;
+
 public class SmsSender {
     public void sendSMSAlert(SmsMessage message) {
         // Do not implement this code. Imagine the code is already here
     }
+
+    // Returns the messages the provider did not accept. It throws only when the provider accepted none of them.
+    public List<SmsMessage> sendSMSAlerts(List<SmsMessage> messages) {
+        // Do not implement this code. Imagine the code is already here
+        return List.of();
+    }
 }
@@ -0,0 +1,58 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.*;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+public class StreamingPropertyRepository implements VersionedPropertyRepository {
+    private final RecordStore<Property> propertyStore;
+
+    public StreamingPropertyRepository(String propertiesFile) {
+        this(new JsonArrayFile<>(propertiesFile, Property.class));
+    }
+
+    public StreamingPropertyRepository(RecordStore<Property> propertyStore) {
+        this.propertyStore = propertyStore;
+    }
+
+    @Override
+    public Stream<Property> find(String postalCode, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        // Searching must not grow the dictionary. Properties are encoded as they are read, so a postal code it does not
+        // know yet can still be in the file and is compared as a string.
+        int postalCodeId = PostalCodeDictionary.find(postalCode);
+        Predicate<Property> isInPostalCode = postalCodeId == PostalCodeDictionary.NOT_FOUND
+                ? property -> property.getPostalCode().equals(postalCode)
+                : property -> property.getPostalCodeId() == postalCodeId;
+        return propertyStore.stream()
+                .filter(property -> isInPostalCode.test(property)
+                        && priceRange.isInRange(property)
+                        && roomRange.isInRange(property)
+                        && squareMetersRange.isInRange(property));
+    }
+
+    @Override
+    public Stream<Property> find(PostalCodeSelection postalCodes, PriceRange priceRange, RoomRange roomRange, SquareMetersRange squareMetersRange) {
+        return propertyStore.stream()
+                .filter(property -> postalCodes.matches(property.getPostalCode())
+                        && priceRange.isInRange(property)
+                        && roomRange.isInRange(property)
+                        && squareMetersRange.isInRange(property));
+    }
+
+    @Override
+    public void add(Property property) {
+        propertyStore.append(property);
+    }
+
+    @Override
+    public FileVersionChange append(List<Property> properties) {
+        return propertyStore.appendAll(properties);
+    }
+
+    @Override
+    public FileVersion version() {
+        return propertyStore.version();
+    }
+}
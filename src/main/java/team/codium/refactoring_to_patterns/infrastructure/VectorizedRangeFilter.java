@@ -0,0 +1,62 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// The lane bits of a vector are folded into an int, so a vector may have at most 32 lanes. Wider hardware falls back to
+// 512-bit vectors, which it runs natively, rather than losing the lanes above the 32nd.
+class VectorizedRangeFilter implements RangeFilter {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED.length() <= Integer.SIZE
+            ? IntVector.SPECIES_PREFERRED : IntVector.SPECIES_512;
+    private static final long LANES = (1L << SPECIES.length()) - 1;
+    private static final IntVector LANE_BITS = IntVector.fromArray(SPECIES, laneBits(), 0);
+    private static final IntVector NO_BITS = IntVector.zero(SPECIES);
+
+    @Override
+    public long[] select(int from, int to, ColumnRange... ranges) {
+        long[] selection = new long[(to - from + 63) >>> 6];
+        int lastFullVector = from + SPECIES.loopBound(to - from);
+        for (int range = 0; range < ranges.length; range++) {
+            select(ranges[range], from, lastFullVector, selection, range == 0);
+        }
+        for (int row = lastFullVector; row < to; row++) {
+            if (ScalarRangeFilter.isInEveryRange(row, ranges)) {
+                int position = row - from;
+                selection[position >>> 6] |= 1L << position;
+            }
+        }
+        return selection;
+    }
+
+    // VectorMask.toLong is not intrinsified on Java 17 and allocates, so the mask is folded into bits with a blend instead.
+    // Vectors start at multiples of the lane count from the first row, so their bits never straddle two words.
+    private static void select(ColumnRange range, int from, int to, long[] selection, boolean isFirstRange) {
+        int[] values = range.values();
+        int minimum = range.minimum();
+        int maximum = range.maximum();
+        for (int row = from; row < to; row += SPECIES.length()) {
+            IntVector vector = IntVector.fromArray(SPECIES, values, row);
+            VectorMask<Integer> mask = vector.compare(VectorOperators.GE, minimum).and(vector.compare(VectorOperators.LE, maximum));
+            long isInRange = Integer.toUnsignedLong(NO_BITS.blend(LANE_BITS, mask).reduceLanes(VectorOperators.OR));
+            int position = row - from;
+            if (isFirstRange) {
+                selection[position >>> 6] |= isInRange << position;
+            } else {
+                selection[position >>> 6] &= ~((~isInRange & LANES) << position);
+            }
+        }
+    }
+
+    private static int[] laneBits() {
+        if (SPECIES.length() > Integer.SIZE) {
+            throw new IllegalStateException(SPECIES + " has more lanes than an int has bits");
+        }
+        int[] laneBits = new int[SPECIES.length()];
+        for (int lane = 0; lane < laneBits.length; lane++) {
+            laneBits[lane] = 1 << lane;
+        }
+        return laneBits;
+    }
+}
@@ -0,0 +1,19 @@
+package team.codium.refactoring_to_patterns.infrastructure;
+
+import team.codium.refactoring_to_patterns.domain.Property;
+import team.codium.refactoring_to_patterns.domain.PropertyRepository;
+
+import java.util.List;
+
+// A repository that reads a record store, whose version changes with every write to it, whoever makes it. Appending
+// through the repository tells which of those changes was its own.
+public interface VersionedPropertyRepository extends PropertyRepository {
+    FileVersion version();
+
+    FileVersionChange append(List<Property> properties);
+
+    @Override
+    default void addAll(List<Property> properties) {
+        append(properties);
+    }
+}
@@ -9,14 +9,25 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import team.codium.refactoring_to_patterns.application.AddAlert;
 import team.codium.refactoring_to_patterns.domain.*;
+import team.codium.refactoring_to_patterns.infrastructure.CompactAlertCodec;
 import team.codium.refactoring_to_patterns.infrastructure.InMemoryLogger;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedAlertRepository;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedUserRepository;
+import team.codium.refactoring_to_patterns.infrastructure.JsonArrayFile;
+import team.codium.refactoring_to_patterns.infrastructure.JsonLinesJournal;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -24,6 +35,8 @@ import static org.hamcrest.MatcherAssert.assertThat;
 
 public class AddAlertTest {
     private static final String ALERTS_FILE = "src/test/resources/tmpTestAlerts.json";
+    private static final String ALERTS_JOURNAL = "src/test/resources/tmpTestAlerts.jsonl";
+    private static final String TMP_USERS_FILE = "src/test/resources/tmpTestUsers.json";
     public static final int NON_EXISTING_USER = 99999999;
     private static final String USERS_FILE = "src/test/resources/testUsers.json";
 
@@ -40,6 +53,8 @@ public class AddAlertTest {
         assertThat(alert.userId(), is(1));
         assertThat(alert.alertType(), is("email"));
         assertThat(alert.postalCode(), is("08030"));
+        assertThat(alert.postalCodeId(), is(PostalCodeDictionary.find("08030")));
+        assertThat(content.contains("postalCodeId"), is(false));
         assertThat(alert.minimumPrice(), is(0));
         assertThat(alert.maximumPrice(), is(100_000));
         assertThat(alert.minimumRooms(), is(0));
@@ -78,6 +93,32 @@ public class AddAlertTest {
         assertThat(alerts.size(), is(2));
     }
 
+    @Test
+    public void appends_one_compact_line_per_alert_to_the_journal() throws Exception {
+        AddAlert addAlert = new AddAlert(new IndexedAlertRepository(new JsonLinesJournal<>(ALERTS_JOURNAL, new CompactAlertCodec())), new IndexedUserRepository(USERS_FILE), null, false);
+
+        addAlert.execute(new AddAlertCommand(1, "email", "08030", 0, 100_000, 0, 3, 30, 200));
+        addAlert.execute(new AddAlertCommand(2, "sms", "04600", null, null, null, null, null, null));
+
+        List<String> lines = Files.readAllLines(Paths.get(ALERTS_JOURNAL));
+        assertThat(lines, is(List.of("[1,\"email\",\"08030\",0,100000,0,3,30,200]", "[2,\"sms\",\"04600\",null,null,null,null,null,null]")));
+    }
+
+    @Test
+    public void alerts_stored_in_the_journal_can_be_matched_after_compaction() throws Exception {
+        JsonLinesJournal<Alert> journal = new JsonLinesJournal<>(ALERTS_JOURNAL, new CompactAlertCodec());
+        IndexedAlertRepository alertRepository = new IndexedAlertRepository(journal);
+        AddAlert addAlert = new AddAlert(alertRepository, new IndexedUserRepository(USERS_FILE), null, false);
+        addAlert.execute(new AddAlertCommand(1, "email", "08030", 0, 100_000, null, null, null, null));
+        addAlert.execute(new AddAlertCommand(2, "push", "08030", 200_000, null, null, null, null, null));
+
+        journal.compact();
+
+        List<Alert> matching = alertRepository.findMatching(new Property(1, "Flat", "08030", 90_000, 2, 60, 1));
+        assertThat(matching.size(), is(1));
+        assertThat(matching.get(0).alertType(), is("email"));
+    }
+
     @Test
     public void fails_when_the_postal_code_is_not_valid() throws Exception {
         AddAlert addAlert = new AddAlert(ALERTS_FILE, USERS_FILE, null, false);
@@ -122,6 +163,88 @@ public class AddAlertTest {
         assertThat(exception.getMessage(), Matchers.is("The user " + NON_EXISTING_USER + " does not exist"));
     }
 
+    @Test
+    public void sees_users_added_to_the_users_file_after_it_was_loaded() throws Exception {
+        Files.copy(Paths.get(USERS_FILE), Paths.get(TMP_USERS_FILE));
+        IndexedUserRepository userRepository = new IndexedUserRepository(new JsonArrayFile<>(TMP_USERS_FILE, User.class), Duration.ZERO);
+        AddAlert addAlert = new AddAlert(new IndexedAlertRepository(ALERTS_FILE), userRepository, null, false);
+        Assertions.assertThrows(InvalidUserIdException.class, () ->
+                addAlert.execute(new AddAlertCommand(3, "email", "08030", null, null, null, null, null, null))
+        );
+
+        new JsonArrayFile<>(TMP_USERS_FILE, User.class).append(new User(3, "Rachael", "rachael@email.com", "673000111"));
+        addAlert.execute(new AddAlertCommand(3, "email", "08030", null, null, null, null, null, null));
+
+        String content = Files.readString(Paths.get(ALERTS_FILE));
+        assertThat(new Gson().fromJson(content, Alert[].class)[0].userId(), is(3));
+    }
+
+    @Test
+    public void a_batch_stores_the_valid_alerts_and_reports_the_invalid_ones() throws Exception {
+        AddAlert addAlert = new AddAlert(ALERTS_FILE, USERS_FILE, null, false);
+
+        BatchResult<AddAlertCommand> result = addAlert.executeBatch(List.of(
+                new AddAlertCommand(1, "email", "08030", null, null, null, null, null, null),
+                new AddAlertCommand(1, "asdf", "08030", null, null, null, null, null, null),
+                new AddAlertCommand(NON_EXISTING_USER, "email", "08030", null, null, null, null, null, null),
+                new AddAlertCommand(1, "sms", "08030", 200_000, 100_000, null, null, null, null),
+                new AddAlertCommand(2, "push", "04600", null, 100_000, null, null, null, null)));
+
+        assertThat(result.succeeded(), is(2));
+        assertThat(result.failures().size(), is(3));
+        assertThat(result.failures().get(0).error() instanceof InvalidAlertTypeException, is(true));
+        assertThat(result.failures().get(1).error() instanceof InvalidUserIdException, is(true));
+        assertThat(result.failures().get(2).error() instanceof InvalidPriceException, is(true));
+        Alert[] alerts = new Gson().fromJson(Files.readString(Paths.get(ALERTS_FILE)), Alert[].class);
+        assertThat(alerts.length, is(2));
+        assertThat(alerts[0].alertType(), is("email"));
+        assertThat(alerts[1].alertType(), is("push"));
+    }
+
+    @Test
+    public void a_batch_is_added_to_an_already_loaded_alert_index() throws Exception {
+        IndexedAlertRepository alertRepository = new IndexedAlertRepository(ALERTS_FILE);
+        AddAlert addAlert = new AddAlert(alertRepository, new IndexedUserRepository(USERS_FILE), null, false);
+        addAlert.execute(new AddAlertCommand(1, "email", "04600", 50_000, 150_000, null, null, null, null));
+        Property property = new Property(1, "New property", "04600", 100_000, 3, 160, 1);
+        assertThat(alertRepository.findMatching(property).size(), is(1));
+
+        addAlert.executeBatch(List.of(
+                new AddAlertCommand(2, "sms", "04600", null, 100_000, 3, 3, null, null),
+                new AddAlertCommand(2, "push", "04600", 100_001, null, null, null, null, null),
+                new AddAlertCommand(1, "push", "04600", null, null, null, null, 160, null)));
+
+        List<Alert> matching = alertRepository.findMatching(property);
+        assertThat(matching.size(), is(3));
+        assertThat(matching.stream().noneMatch(alert -> alert.minimumPrice() != null && alert.minimumPrice() == 100_001), is(true));
+    }
+
+    @Test
+    public void concurrent_writers_do_not_lose_alerts() throws Exception {
+        int writers = 8;
+        int alertsPerWriter = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            int minimumPrice = writer * alertsPerWriter;
+            AddAlert addAlert = new AddAlert(ALERTS_FILE, USERS_FILE, null, false);
+            writes.add(executor.submit(() -> {
+                for (int price = minimumPrice; price < minimumPrice + alertsPerWriter; price++) {
+                    addAlert.execute(new AddAlertCommand(1, "email", "08030", price, null, null, null, null, null));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Alert[] alerts = new Gson().fromJson(Files.readString(Paths.get(ALERTS_FILE)), Alert[].class);
+        assertThat(alerts.length, is(writers * alertsPerWriter));
+        assertThat(Arrays.stream(alerts).map(Alert::minimumPrice).distinct().count(), is((long) writers * alertsPerWriter));
+    }
+
     @Test
     public void fails_when_the_notification_type_is_not_valid() {
         AddAlert addAlert = new AddAlert(ALERTS_FILE, USERS_FILE, null, false);
@@ -187,6 +310,9 @@ public class AddAlertTest {
     @AfterEach
     public void tearDown() {
         try {
+            Files.deleteIfExists(Paths.get(ALERTS_JOURNAL));
+            Files.deleteIfExists(Paths.get(ALERTS_JOURNAL + ".lock"));
+            Files.deleteIfExists(Paths.get(TMP_USERS_FILE));
             Files.delete(Paths.get(ALERTS_FILE));
         } catch (IOException ignored) {
         }
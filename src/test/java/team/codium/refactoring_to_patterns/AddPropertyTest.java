@@ -1,22 +1,58 @@
 package team.codium.refactoring_to_patterns;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import team.codium.refactoring_to_patterns.application.AddProperty;
+import team.codium.refactoring_to_patterns.application.SearchProperty;
 import team.codium.refactoring_to_patterns.domain.*;
+import team.codium.refactoring_to_patterns.infrastructure.AsyncNotificationDispatcher;
+import team.codium.refactoring_to_patterns.infrastructure.BatchingNotificationDispatcher;
+import team.codium.refactoring_to_patterns.infrastructure.CoalescingNotificationDispatcher;
+import team.codium.refactoring_to_patterns.infrastructure.DirectNotificationDispatcher;
 import team.codium.refactoring_to_patterns.infrastructure.EmailSender;
+import team.codium.refactoring_to_patterns.infrastructure.FileVersion;
+import team.codium.refactoring_to_patterns.infrastructure.FileVersionChange;
+import team.codium.refactoring_to_patterns.infrastructure.GroupCommitStore;
 import team.codium.refactoring_to_patterns.infrastructure.InMemoryLogger;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedAlertRepository;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedPropertyRepository;
+import team.codium.refactoring_to_patterns.infrastructure.IndexedUserRepository;
+import team.codium.refactoring_to_patterns.infrastructure.JsonArrayFile;
+import team.codium.refactoring_to_patterns.infrastructure.JsonLinesJournal;
+import team.codium.refactoring_to_patterns.infrastructure.MetricsRegistry;
+import team.codium.refactoring_to_patterns.infrastructure.NotDurableException;
 import team.codium.refactoring_to_patterns.infrastructure.PushSender;
+import team.codium.refactoring_to_patterns.infrastructure.RecordStore;
+import team.codium.refactoring_to_patterns.infrastructure.ShardedAlertRepository;
+import team.codium.refactoring_to_patterns.infrastructure.ShardedPropertyRepository;
 import team.codium.refactoring_to_patterns.infrastructure.SmsSender;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -26,7 +62,9 @@ import static org.mockito.Mockito.*;
 public class AddPropertyTest {
 
     private static final String PROPERTIES = "src/test/resources/tmpAddPropertyProperties.json";
+    private static final String PROPERTIES_JOURNAL = "src/test/resources/tmpAddPropertyProperties.jsonl";
     private static final String ALERTS = "src/test/resources/tmpTestAlerts.json";
+    private static final String SHARDS = "src/test/resources/tmpAddPropertyShards";
     public static final int NON_EXISTING_OWNER = 999999;
     private static final String USERS_FILE = "src/test/resources/testUsers.json";
 
@@ -61,6 +99,99 @@ public class AddPropertyTest {
         assertThat(allProperties.length, is(2));
     }
 
+    @Test
+    public void does_not_overwrite_a_properties_file_with_a_torn_end() throws Exception {
+        String tornFile = "[{\"id\":1,\"description\":\"New property\",\"postalCode\":\"04600\",\"price\":140000,\"numberOfRooms\":3,\"squareMeters\":160,\"ownerId\":1},{\"id\":2,\"descr";
+        Files.writeString(Paths.get(PROPERTIES), tornFile);
+        AddProperty addProperty = new AddProperty(PROPERTIES, USERS_FILE, mock(EmailSender.class), ALERTS, mock(SmsSender.class), mock(PushSender.class), null, false);
+
+        Assertions.assertThrows(JsonSyntaxException.class, () ->
+                addProperty.execute(new AddPropertyCommand(3, "New property", "04600", 140_000, 3, 160, 1))
+        );
+
+        assertThat(Files.readString(Paths.get(PROPERTIES)), is(tornFile));
+        Assertions.assertThrows(JsonSyntaxException.class, () ->
+                new SearchProperty(PROPERTIES, null, false).search(new SearchQuery("04600", null, null, null, null, null, null))
+        );
+    }
+
+    @Test
+    public void appends_one_line_per_property_to_the_journal() throws Exception {
+        IndexedPropertyRepository propertyRepository = new IndexedPropertyRepository(new JsonLinesJournal<>(PROPERTIES_JOURNAL, Property.class, Property::getId));
+        AddProperty addProperty = new AddProperty(propertyRepository, new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), mock(NotificationDispatcher.class), null, false);
+
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 140_000, 3, 160, 1));
+        addProperty.execute(new AddPropertyCommand(2, "Another property", "04600", 120_000, 3, 160, 1));
+
+        List<String> lines = Files.readAllLines(Paths.get(PROPERTIES_JOURNAL));
+        assertThat(lines.size(), is(2));
+        assertThat(new Gson().fromJson(lines.get(1), Property.class).getDescription(), is("Another property"));
+        Property[] found = new SearchProperty(new IndexedPropertyRepository(new JsonLinesJournal<>(PROPERTIES_JOURNAL, Property.class, Property::getId)), null, false)
+                .search(new SearchQuery("04600", null, null, null, null, null, null));
+        assertThat(found.length, is(2));
+    }
+
+    @Test
+    public void compacting_the_journal_keeps_the_latest_record_of_each_property() throws Exception {
+        JsonLinesJournal<Property> journal = new JsonLinesJournal<>(PROPERTIES_JOURNAL, Property.class, Property::getId);
+        AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(journal), new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), mock(NotificationDispatcher.class), null, false);
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 140_000, 3, 160, 1));
+        addProperty.execute(new AddPropertyCommand(1, "Updated property", "04600", 130_000, 3, 160, 1));
+
+        journal.compact();
+
+        List<String> lines = Files.readAllLines(Paths.get(PROPERTIES_JOURNAL));
+        assertThat(lines.size(), is(1));
+        assertThat(new Gson().fromJson(lines.get(0), Property.class).getDescription(), is("Updated property"));
+    }
+
+    @Test
+    public void compacting_the_journal_keeps_the_properties_in_the_order_they_were_first_added() throws Exception {
+        JsonLinesJournal<Property> journal = new JsonLinesJournal<>(PROPERTIES_JOURNAL, Property.class, Property::getId);
+        AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(journal), new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), mock(NotificationDispatcher.class), null, false);
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 140_000, 3, 160, 1));
+        addProperty.execute(new AddPropertyCommand(2, "Another property", "04600", 140_000, 3, 160, 1));
+        addProperty.execute(new AddPropertyCommand(1, "Updated property", "04600", 140_000, 3, 160, 1));
+
+        journal.compact();
+
+        List<String> descriptions = Files.readAllLines(Paths.get(PROPERTIES_JOURNAL)).stream()
+                .map(line -> new Gson().fromJson(line, Property.class).getDescription())
+                .collect(Collectors.toList());
+        assertThat(descriptions, is(List.of("Updated property", "Another property")));
+    }
+
+    @Test
+    public void appending_after_a_torn_journal_line_keeps_the_new_record() throws Exception {
+        Files.writeString(Paths.get(PROPERTIES_JOURNAL), "{\"id\":1,\"description\":\"New property\",\"postalCode\":\"04600\",\"price\":140000,\"numberOfRooms\":3,\"squareMeters\":160,\"ownerId\":1}\n{\"id\":2,\"descr");
+        JsonLinesJournal<Property> journal = new JsonLinesJournal<>(PROPERTIES_JOURNAL, Property.class, Property::getId);
+
+        journal.append(new Property(3, "Another property", "04600", 120_000, 3, 160, 1));
+        journal.compact();
+
+        try (Stream<Property> properties = journal.stream()) {
+            assertThat(properties.map(Property::getId).collect(Collectors.toList()), is(List.of(1, 3)));
+        }
+    }
+
+    @Test
+    public void refuses_to_read_or_compact_a_journal_with_a_corrupt_record_before_its_last_line() throws Exception {
+        String corruptJournal = "{\"id\":1,\"description\":\"New property\",\"postalCode\":\"04600\",\"price\":\"oops\",\"numberOfRooms\":3,\"squareMeters\":160,\"ownerId\":1}\n"
+                + "{\"id\":2,\"description\":\"Another property\",\"postalCode\":\"04600\",\"price\":120000,\"numberOfRooms\":3,\"squareMeters\":160,\"ownerId\":1}\n";
+        Files.writeString(Paths.get(PROPERTIES_JOURNAL), corruptJournal);
+        JsonLinesJournal<Property> journal = new JsonLinesJournal<>(PROPERTIES_JOURNAL, Property.class, Property::getId);
+
+        Assertions.assertThrows(JsonSyntaxException.class, () -> {
+            try (Stream<Property> properties = journal.stream()) {
+                properties.forEach(property -> {
+                });
+            }
+        });
+        Assertions.assertThrows(JsonSyntaxException.class, journal::compact);
+
+        assertThat(Files.readString(Paths.get(PROPERTIES_JOURNAL)), is(corruptJournal));
+    }
+
     @Test
     public void fails_when_the_postal_code_is_not_valid() throws Exception {
         AddProperty addProperty = new AddProperty(PROPERTIES, USERS_FILE, mock(EmailSender.class), ALERTS, mock(SmsSender.class), mock(PushSender.class), null, false);
@@ -148,6 +279,27 @@ public class AddPropertyTest {
         verify(pushSender, times(1)).sendPushNotification(any());
     }
 
+    @Test
+    public void records_the_latency_of_every_phase_and_counts_the_messages_per_alert_type() throws Exception {
+        Alert emailAlert = new Alert(2, "email", "04600", null, null, null, null, null, null);
+        Alert smsAlert = new Alert(2, "sms", "04600", null, null, null, null, null, null);
+        Alert otherEmailAlert = new Alert(2, "email", "04600", null, 150_000, null, null, null, null);
+        Files.writeString(Paths.get(ALERTS), new Gson().toJson(List.of(emailAlert, smsAlert, otherEmailAlert)));
+        MetricsRegistry metrics = new MetricsRegistry();
+        AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(PROPERTIES), new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), mock(NotificationDispatcher.class), null, false, metrics);
+
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 100_000, 3, 160, 2));
+        addProperty.execute(new AddPropertyCommand(2, "Expensive property", "04600", 200_000, 3, 160, 2));
+
+        for (String phase : List.of("addProperty.validate", "addProperty.store", "addProperty.matchAlerts", "addProperty.dispatch")) {
+            assertThat(metrics.histogram(phase).count(), is(2L));
+        }
+        assertThat(metrics.counter("addProperty.matchedAlerts"), is(5L));
+        assertThat(metrics.counter("addProperty.messages.email"), is(3L));
+        assertThat(metrics.counter("addProperty.messages.sms"), is(2L));
+        assertThat(metrics.counter("addProperty.messages.push"), is(0L));
+    }
+
     @Test
     public void do_not_send_alerts_in_the_other_postal_code() throws Exception {
         Alert emailAlert = new Alert(2, "email", "04600", null, null, null, null, null, null);
@@ -274,6 +426,495 @@ public class AddPropertyTest {
         verifyNoInteractions(pushSender);
     }
 
+    @Test
+    public void sends_alerts_asynchronously_through_the_dispatcher() throws Exception {
+        Alert emailAlert = new Alert(2, "email", "04600", null, null, null, null, null, null);
+        Alert smsAlert = new Alert(2, "sms", "04600", null, null, null, null, null, null);
+        Alert pushAlert = new Alert(2, "push", "04600", null, null, null, null, null, null);
+        Files.writeString(Paths.get(ALERTS), new Gson().toJson(List.of(emailAlert, smsAlert, pushAlert)));
+        EmailSender emailSender = mock(EmailSender.class);
+        SmsSender smsSender = mock(SmsSender.class);
+        PushSender pushSender = mock(PushSender.class);
+        try (AsyncNotificationDispatcher dispatcher = new AsyncNotificationDispatcher(emailSender, smsSender, pushSender, 10, 2)) {
+            AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(PROPERTIES), new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), dispatcher, null, false);
+
+            addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 100_000, 3, 160, 2));
+
+            assertThat(dispatcher.awaitDrained(Duration.ofSeconds(5)), is(true));
+        }
+        verify(emailSender).sendEmail(new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1"));
+        verify(smsSender).sendSMSAlert(any());
+        verify(pushSender).sendPushNotification(any());
+    }
+
+    @Test
+    public void every_channel_sends_with_its_own_number_of_senders() throws Exception {
+        CountDownLatch smsMessagesInFlight = new CountDownLatch(3);
+        AtomicBoolean wereAllSmsMessagesInFlight = new AtomicBoolean(true);
+        AtomicInteger emailsInFlight = new AtomicInteger();
+        AtomicInteger mostEmailsInFlight = new AtomicInteger();
+        EmailSender emailSender = mock(EmailSender.class);
+        doAnswer(invocation -> {
+            mostEmailsInFlight.accumulateAndGet(emailsInFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            emailsInFlight.decrementAndGet();
+            return null;
+        }).when(emailSender).sendEmail(any());
+        SmsSender smsSender = mock(SmsSender.class);
+        doAnswer(invocation -> {
+            smsMessagesInFlight.countDown();
+            if (!smsMessagesInFlight.await(5, TimeUnit.SECONDS)) {
+                wereAllSmsMessagesInFlight.set(false);
+            }
+            return null;
+        }).when(smsSender).sendSMSAlert(any());
+
+        try (AsyncNotificationDispatcher dispatcher = new AsyncNotificationDispatcher(emailSender, smsSender, mock(PushSender.class), 10, 1, 3, 1)) {
+            for (int message = 0; message < 3; message++) {
+                dispatcher.dispatch(new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/" + message));
+                dispatcher.dispatch(new SmsMessage("673777555", "There is a new property at 04600. More information at https://properties.codium.team/" + message));
+            }
+
+            assertThat(dispatcher.awaitDrained(Duration.ofSeconds(10)), is(true));
+        }
+        assertThat(wereAllSmsMessagesInFlight.get(), is(true));
+        assertThat(mostEmailsInFlight.get(), is(1));
+    }
+
+    @Test
+    public void a_delivery_waiting_for_queue_space_when_the_dispatcher_shuts_down_is_sent_or_rejected() throws Exception {
+        CountDownLatch releaseSender = new CountDownLatch(1);
+        EmailSender emailSender = mock(EmailSender.class);
+        doAnswer(invocation -> releaseSender.await(5, TimeUnit.SECONDS)).when(emailSender).sendEmail(any());
+        AsyncNotificationDispatcher dispatcher = new AsyncNotificationDispatcher(emailSender, mock(SmsSender.class), mock(PushSender.class), 1, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            dispatcher.dispatch(new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1"));
+            dispatcher.dispatch(new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/2"));
+            Future<?> waitingDispatch = executor.submit(() -> dispatcher.dispatch(
+                    new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/3")));
+            Thread.sleep(50);
+            Future<Boolean> shutdown = executor.submit(() -> dispatcher.shutdown(Duration.ofSeconds(5)));
+            Thread.sleep(50);
+            releaseSender.countDown();
+
+            assertThat(shutdown.get(10, TimeUnit.SECONDS), is(true));
+            try {
+                waitingDispatch.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertThat(e.getCause() instanceof RejectedExecutionException, is(true));
+            }
+            assertThat(dispatcher.awaitDrained(Duration.ofSeconds(1)), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sends_alerts_in_batches_per_alert_type() throws Exception {
+        Alert firstEmailAlert = new Alert(1, "email", "04600", null, null, null, null, null, null);
+        Alert secondEmailAlert = new Alert(2, "email", "04600", null, null, null, null, null, null);
+        Alert smsAlert = new Alert(2, "sms", "04600", null, null, null, null, null, null);
+        Files.writeString(Paths.get(ALERTS), new Gson().toJson(List.of(firstEmailAlert, secondEmailAlert, smsAlert)));
+        EmailSender emailSender = mock(EmailSender.class);
+        SmsSender smsSender = mock(SmsSender.class);
+        PushSender pushSender = mock(PushSender.class);
+        try (BatchingNotificationDispatcher dispatcher = new BatchingNotificationDispatcher(emailSender, smsSender, pushSender, 100, Duration.ofMinutes(1))) {
+            AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(PROPERTIES), new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), dispatcher, null, false);
+
+            addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 100_000, 3, 160, 2));
+            addProperty.execute(new AddPropertyCommand(2, "New property", "04600", 100_000, 3, 160, 2));
+        }
+
+        verify(emailSender, times(1)).sendEmails(argThat(emails -> emails.size() == 4));
+        verify(smsSender, times(1)).sendSMSAlerts(argThat(messages -> messages.size() == 2));
+        verify(emailSender, never()).sendEmail(any());
+        verifyNoInteractions(pushSender);
+    }
+
+    @Test
+    public void flushes_a_batch_as_soon_as_it_is_full() throws Exception {
+        Alert firstEmailAlert = new Alert(1, "email", "04600", null, null, null, null, null, null);
+        Alert secondEmailAlert = new Alert(2, "email", "04600", null, null, null, null, null, null);
+        Files.writeString(Paths.get(ALERTS), new Gson().toJson(List.of(firstEmailAlert, secondEmailAlert)));
+        EmailSender emailSender = mock(EmailSender.class);
+        BatchingNotificationDispatcher dispatcher = new BatchingNotificationDispatcher(emailSender, mock(SmsSender.class), mock(PushSender.class), 2, Duration.ofMinutes(1));
+        AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(PROPERTIES), new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), dispatcher, null, false);
+
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 100_000, 3, 160, 2));
+
+        verify(emailSender, times(1)).sendEmails(argThat(emails -> emails.size() == 2));
+        dispatcher.close();
+    }
+
+    @Test
+    public void falls_back_to_single_sends_and_reports_the_messages_a_failing_batch_could_not_send() throws Exception {
+        Email first = new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1");
+        Email rejected = new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/2");
+        EmailSender emailSender = mock(EmailSender.class);
+        doThrow(new IllegalStateException("Mail server unavailable")).when(emailSender).sendEmails(any());
+        doThrow(new IllegalArgumentException("Mailbox full")).when(emailSender).sendEmail(rejected);
+        InMemoryLogger logger = new InMemoryLogger();
+        MetricsRegistry metrics = new MetricsRegistry();
+        BatchingNotificationDispatcher dispatcher = new BatchingNotificationDispatcher(emailSender, mock(SmsSender.class), mock(PushSender.class), 100, Duration.ofMinutes(1), logger, metrics);
+
+        dispatcher.dispatch(first);
+        dispatcher.dispatch(rejected);
+        dispatcher.close();
+
+        verify(emailSender).sendEmail(first);
+        assertThat(metrics.counter("notifications.failedBatches"), is(1L));
+        assertThat(metrics.counter("notifications.failedMessages"), is(1L));
+        assertThat(logger.getLoggedData().size(), is(2));
+        assertThat(logger.getLoggedData().get(1).get("notification"), is(rejected));
+    }
+
+    @Test
+    public void retries_only_the_messages_a_batch_did_not_deliver() throws Exception {
+        Email accepted = new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1");
+        Email notAccepted = new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/2");
+        EmailSender emailSender = mock(EmailSender.class);
+        when(emailSender.sendEmails(any())).thenReturn(List.of(notAccepted));
+        BatchingNotificationDispatcher dispatcher = new BatchingNotificationDispatcher(emailSender, mock(SmsSender.class), mock(PushSender.class), 100, Duration.ofMinutes(1));
+
+        dispatcher.dispatch(accepted);
+        dispatcher.dispatch(notAccepted);
+        dispatcher.close();
+
+        verify(emailSender).sendEmail(notAccepted);
+        verify(emailSender, never()).sendEmail(accepted);
+    }
+
+    @Test
+    public void rejects_messages_dispatched_after_the_batching_dispatcher_is_closed() throws Exception {
+        BatchingNotificationDispatcher dispatcher = new BatchingNotificationDispatcher(mock(EmailSender.class), mock(SmsSender.class), mock(PushSender.class), 100, Duration.ofMinutes(1));
+        dispatcher.close();
+
+        Assertions.assertThrows(RejectedExecutionException.class, () ->
+                dispatcher.dispatch(new SmsMessage("673777555", "There is a new property at 04600. More information at https://properties.codium.team/1"))
+        );
+    }
+
+    @Test
+    public void sends_one_alert_per_user_property_and_channel_when_deduplicating() throws Exception {
+        Alert exactBounds = new Alert(2, "email", "04600", 100_000, 100_000, 3, 3, 160, 160);
+        Alert openBounds = new Alert(2, "email", "04600", null, null, null, null, null, null);
+        Alert smsAlert = new Alert(2, "sms", "04600", null, null, null, null, null, null);
+        Files.writeString(Paths.get(ALERTS), new Gson().toJson(List.of(exactBounds, openBounds, smsAlert)));
+        EmailSender emailSender = mock(EmailSender.class);
+        SmsSender smsSender = mock(SmsSender.class);
+        CoalescingNotificationDispatcher dispatcher = new CoalescingNotificationDispatcher(new DirectNotificationDispatcher(emailSender, smsSender, mock(PushSender.class)), Duration.ofMinutes(1), CoalescingNotificationDispatcher.Mode.DEDUPLICATE);
+        AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(PROPERTIES), new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), dispatcher, null, false);
+
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 100_000, 3, 160, 2));
+        addProperty.execute(new AddPropertyCommand(2, "New property", "04600", 100_000, 3, 160, 2));
+
+        verify(emailSender, times(1)).sendEmail(new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1"));
+        verify(emailSender, times(1)).sendEmail(new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/2"));
+        verify(smsSender, times(2)).sendSMSAlert(any());
+        dispatcher.close();
+    }
+
+    @Test
+    public void sends_a_single_digest_per_user_and_channel_for_every_window() throws Exception {
+        Alert exactBounds = new Alert(2, "email", "04600", 100_000, 100_000, 3, 3, 160, 160);
+        Alert openBounds = new Alert(2, "email", "04600", null, null, null, null, null, null);
+        Alert smsAlert = new Alert(2, "sms", "04600", null, null, null, null, null, null);
+        Files.writeString(Paths.get(ALERTS), new Gson().toJson(List.of(exactBounds, openBounds, smsAlert)));
+        EmailSender emailSender = mock(EmailSender.class);
+        SmsSender smsSender = mock(SmsSender.class);
+        try (CoalescingNotificationDispatcher dispatcher = new CoalescingNotificationDispatcher(new DirectNotificationDispatcher(emailSender, smsSender, mock(PushSender.class)), Duration.ofMinutes(1), CoalescingNotificationDispatcher.Mode.DIGEST)) {
+            AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(PROPERTIES), new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), dispatcher, null, false);
+
+            addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 100_000, 3, 160, 2));
+            addProperty.execute(new AddPropertyCommand(2, "New property", "04600", 100_000, 3, 160, 2));
+            verifyNoInteractions(emailSender, smsSender);
+        }
+
+        verify(emailSender, times(1)).sendEmail(new Email("noreply@codium.team", "rDeckard@email.com", "There are 2 new properties",
+                "There is a new property at 04600. More information at https://properties.codium.team/1\n"
+                        + "There is a new property at 04600. More information at https://properties.codium.team/2"));
+        verify(smsSender, times(1)).sendSMSAlert(argThat(message -> message.message().startsWith("There are 2 new properties")));
+    }
+
+    @Test
+    public void deduplicates_on_the_user_and_the_property_rather_than_on_the_message_text() {
+        Email alert = new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1");
+        Email reworded = new Email("noreply@codium.team", "rDeckard@email.com", "New property at 04600", "More information at https://properties.codium.team/1");
+        EmailSender emailSender = mock(EmailSender.class);
+        CoalescingNotificationDispatcher dispatcher = new CoalescingNotificationDispatcher(new DirectNotificationDispatcher(emailSender, mock(SmsSender.class), mock(PushSender.class)), Duration.ofMinutes(1), CoalescingNotificationDispatcher.Mode.DEDUPLICATE);
+
+        dispatcher.dispatch(2, 1, alert);
+        dispatcher.dispatch(2, 1, reworded);
+        dispatcher.dispatch(2, 2, alert);
+        dispatcher.close();
+
+        verify(emailSender, times(2)).sendEmail(alert);
+        verify(emailSender, never()).sendEmail(reworded);
+    }
+
+    @Test
+    public void keeps_the_digests_a_failing_send_could_not_deliver_for_the_next_window() {
+        Email johnsAlert = new Email("noreply@codium.team", "an@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1");
+        Email ricksAlert = new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1");
+        EmailSender emailSender = mock(EmailSender.class);
+        doThrow(new IllegalStateException("Mail server unavailable")).doNothing().when(emailSender).sendEmail(johnsAlert);
+        MetricsRegistry metrics = new MetricsRegistry();
+        CoalescingNotificationDispatcher dispatcher = new CoalescingNotificationDispatcher(new DirectNotificationDispatcher(emailSender, mock(SmsSender.class), mock(PushSender.class)), Duration.ofMinutes(1), CoalescingNotificationDispatcher.Mode.DIGEST, null, metrics);
+
+        dispatcher.dispatch(1, 1, johnsAlert);
+        dispatcher.dispatch(2, 1, ricksAlert);
+        dispatcher.flush();
+
+        verify(emailSender).sendEmail(ricksAlert);
+        assertThat(metrics.counter("notifications.failedMessages"), is(1L));
+
+        dispatcher.flush();
+        dispatcher.close();
+
+        verify(emailSender, times(2)).sendEmail(johnsAlert);
+        verify(emailSender, times(1)).sendEmail(ricksAlert);
+    }
+
+    @Test
+    public void sends_alerts_only_when_every_range_contains_the_property() throws Exception {
+        Alert exactBounds = new Alert(2, "email", "04600", 100_000, 100_000, 3, 3, 160, 160);
+        Alert openBounds = new Alert(2, "email", "04600", null, null, null, null, null, null);
+        Alert onlyUpperBounds = new Alert(2, "email", "04600", null, 200_000, null, 5, null, 200);
+        Alert roomsOutOfRange = new Alert(2, "email", "04600", 0, 200_000, 4, null, 0, 200);
+        Alert squareMetersOutOfRange = new Alert(2, "email", "04600", 0, 200_000, 0, 5, 0, 159);
+        Files.writeString(Paths.get(ALERTS), new Gson().toJson(List.of(exactBounds, openBounds, onlyUpperBounds, roomsOutOfRange, squareMetersOutOfRange)));
+        EmailSender emailSender = mock(EmailSender.class);
+        AddProperty addProperty = new AddProperty(PROPERTIES, USERS_FILE, emailSender, ALERTS, mock(SmsSender.class), mock(PushSender.class), null, false);
+
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 100_000, 3, 160, 2));
+
+        verify(emailSender, times(3)).sendEmail(any());
+    }
+
+    @Test
+    public void a_batch_stores_the_valid_properties_and_reports_the_invalid_ones() throws Exception {
+        AddProperty addProperty = new AddProperty(PROPERTIES, USERS_FILE, mock(EmailSender.class), ALERTS, mock(SmsSender.class), mock(PushSender.class), null, false);
+
+        BatchResult<AddPropertyCommand> result = addProperty.executeBatch(List.of(
+                new AddPropertyCommand(1, "New property", "04600", 140_000, 3, 160, 1),
+                new AddPropertyCommand(2, "Invalid postal code", "0460", 140_000, 3, 160, 1),
+                new AddPropertyCommand(3, "Unknown owner", "04600", 140_000, 3, 160, NON_EXISTING_OWNER),
+                new AddPropertyCommand(4, "Another property", "04600", 120_000, 2, 90, 1)));
+
+        assertThat(result.succeeded(), is(2));
+        assertThat(result.failures().size(), is(2));
+        assertThat(result.failures().get(0).index(), is(1));
+        assertThat(result.failures().get(0).error() instanceof InvalidPostalCodeException, is(true));
+        assertThat(result.failures().get(1).index(), is(2));
+        assertThat(result.failures().get(1).error() instanceof InvalidUserIdException, is(true));
+        Property[] allProperties = new Gson().fromJson(Files.readString(Paths.get(PROPERTIES)), Property[].class);
+        assertThat(allProperties.length, is(2));
+        assertThat(allProperties[0].getId(), is(1));
+        assertThat(allProperties[1].getId(), is(4));
+    }
+
+    @Test
+    public void a_batch_sends_the_alerts_of_every_stored_property() throws Exception {
+        Alert emailAlert = new Alert(2, "email", "04600", null, 150_000, null, null, null, null);
+        Files.writeString(Paths.get(ALERTS), new Gson().toJson(List.of(emailAlert)));
+        EmailSender emailSender = mock(EmailSender.class);
+        AddProperty addProperty = new AddProperty(PROPERTIES, USERS_FILE, emailSender, ALERTS, mock(SmsSender.class), mock(PushSender.class), null, false);
+
+        addProperty.executeBatch(List.of(
+                new AddPropertyCommand(1, "New property", "04600", 140_000, 3, 160, 1),
+                new AddPropertyCommand(2, "Too expensive", "04600", 240_000, 3, 160, 1),
+                new AddPropertyCommand(3, "Another property", "04600", 120_000, 2, 90, 1)));
+
+        verify(emailSender).sendEmail(new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/1"));
+        verify(emailSender).sendEmail(new Email("noreply@codium.team", "rDeckard@email.com", "There is a new property at 04600", "More information at https://properties.codium.team/3"));
+        verify(emailSender, times(2)).sendEmail(any());
+    }
+
+    @Test
+    public void a_batch_matches_its_alerts_in_one_pass_and_resolves_users_from_one_snapshot() throws Exception {
+        IndexedAlertRepository alertRepository = spy(new IndexedAlertRepository(ALERTS));
+        alertRepository.add(new Alert(2, "email", "04600", null, null, null, null, null, null));
+        alertRepository.add(new Alert(2, "email", "08030", null, null, null, null, null, null));
+        UserRepository userRepository = spy(new IndexedUserRepository(USERS_FILE));
+        EmailSender emailSender = mock(EmailSender.class);
+        AddProperty addProperty = new AddProperty(new IndexedPropertyRepository(PROPERTIES), userRepository, alertRepository,
+                new DirectNotificationDispatcher(emailSender, mock(SmsSender.class), mock(PushSender.class)), null, false);
+
+        addProperty.executeBatch(List.of(
+                new AddPropertyCommand(1, "New property", "04600", 140_000, 3, 160, 1),
+                new AddPropertyCommand(2, "Another property", "08030", 120_000, 2, 90, 1),
+                new AddPropertyCommand(3, "Third property", "04600", 130_000, 2, 90, 1)));
+
+        verify(alertRepository, times(1)).findMatchingAll(any());
+        verify(alertRepository, never()).findMatching(any());
+        verify(userRepository, times(1)).snapshot();
+        verify(userRepository, never()).findById(anyInt());
+        verify(emailSender, times(3)).sendEmail(any());
+    }
+
+    @Test
+    public void concurrent_writers_do_not_lose_properties_and_readers_keep_searching() throws Exception {
+        int writers = 8;
+        int propertiesPerWriter = 50;
+        AddProperty sharedAddProperty = new AddProperty(PROPERTIES, USERS_FILE, mock(EmailSender.class), ALERTS, mock(SmsSender.class), mock(PushSender.class), null, false);
+        SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        AtomicBoolean isWriting = new AtomicBoolean(true);
+        Future<Integer> searches = executor.submit(() -> {
+            int completedSearches = 0;
+            while (isWriting.get()) {
+                searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+                completedSearches++;
+            }
+            return completedSearches;
+        });
+        List<Future<?>> writes = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            int firstId = writer * propertiesPerWriter;
+            AddProperty addProperty = writer % 2 == 0
+                    ? sharedAddProperty
+                    : new AddProperty(PROPERTIES, USERS_FILE, mock(EmailSender.class), ALERTS, mock(SmsSender.class), mock(PushSender.class), null, false);
+            writes.add(executor.submit(() -> {
+                for (int id = firstId; id < firstId + propertiesPerWriter; id++) {
+                    addProperty.execute(new AddPropertyCommand(id, "Property " + id, "04600", 100_000 + id, 3, 160, 1));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get(30, TimeUnit.SECONDS);
+        }
+        isWriting.set(false);
+        assertThat(searches.get(30, TimeUnit.SECONDS) > 0, is(true));
+        executor.shutdown();
+
+        Property[] allProperties = new Gson().fromJson(Files.readString(Paths.get(PROPERTIES)), Property[].class);
+        assertThat(allProperties.length, is(writers * propertiesPerWriter));
+        assertThat(Arrays.stream(allProperties).map(Property::getId).distinct().count(), is((long) writers * propertiesPerWriter));
+        assertThat(searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null)).length, is(writers * propertiesPerWriter));
+    }
+
+    @Test
+    public void a_write_from_another_repository_during_an_append_is_not_missed_by_the_index() throws Exception {
+        IndexedPropertyRepository otherWriter = new IndexedPropertyRepository(PROPERTIES);
+        JsonArrayFile<Property> propertiesFile = new JsonArrayFile<>(PROPERTIES, Property.class);
+        RecordStore<Property> racedStore = new RecordStore<>() {
+            @Override
+            public Stream<Property> stream() {
+                return propertiesFile.stream();
+            }
+
+            @Override
+            public void append(Property record) {
+                appendAll(List.of(record));
+            }
+
+            @Override
+            public FileVersionChange appendAll(List<Property> records) {
+                otherWriter.add(new Property(1, "Written by another repository", "04600", 140_000, 3, 160, 1));
+                return propertiesFile.appendAll(records);
+            }
+
+            @Override
+            public void force() {
+                propertiesFile.force();
+            }
+
+            @Override
+            public FileVersion version() {
+                return propertiesFile.version();
+            }
+        };
+        IndexedPropertyRepository propertyRepository = new IndexedPropertyRepository(racedStore);
+        propertyRepository.load();
+
+        propertyRepository.add(new Property(2, "New property", "04600", 150_000, 3, 160, 1));
+
+        Property[] found = new SearchProperty(propertyRepository, null, false).search(new SearchQuery("04600", null, null, null, null, null, null));
+        assertThat(Arrays.stream(found).map(Property::getId).collect(Collectors.toList()), is(List.of(1, 2)));
+    }
+
+    @Test
+    public void concurrent_writes_are_grouped_into_fewer_durable_commits() throws Exception {
+        int writers = 8;
+        int propertiesPerWriter = 25;
+        try (GroupCommitStore<Property> propertyStore = new GroupCommitStore<>(new JsonArrayFile<>(PROPERTIES, Property.class), Duration.ofMillis(20), 1000)) {
+            IndexedPropertyRepository propertyRepository = new IndexedPropertyRepository(propertyStore);
+            AddProperty addProperty = new AddProperty(propertyRepository, new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository(ALERTS), mock(NotificationDispatcher.class), null, false);
+            ExecutorService executor = Executors.newFixedThreadPool(writers);
+            List<Future<?>> writes = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                int firstId = writer * propertiesPerWriter;
+                writes.add(executor.submit(() -> {
+                    for (int id = firstId; id < firstId + propertiesPerWriter; id++) {
+                        addProperty.execute(new AddPropertyCommand(id, "Property " + id, "04600", 100_000 + id, 3, 160, 1));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+
+            Property[] allProperties = new Gson().fromJson(Files.readString(Paths.get(PROPERTIES)), Property[].class);
+            assertThat(allProperties.length, is(writers * propertiesPerWriter));
+            assertThat(propertyStore.commits() < writers * propertiesPerWriter, is(true));
+            assertThat(new SearchProperty(propertyRepository, null, false).search(new SearchQuery("04600", null, null, null, null, null, null)).length, is(writers * propertiesPerWriter));
+        }
+    }
+
+    @Test
+    public void a_closed_group_commit_store_refuses_appends_instead_of_waiting_for_them() throws Exception {
+        GroupCommitStore<Property> propertyStore = new GroupCommitStore<>(new JsonArrayFile<>(PROPERTIES, Property.class), Duration.ofMillis(20), 1000);
+        propertyStore.append(new Property(1, "New property", "04600", 140_000, 3, 160, 1));
+
+        propertyStore.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> propertyStore.append(new Property(2, "New property", "04600", 140_000, 3, 160, 1)));
+        assertThat(new Gson().fromJson(Files.readString(Paths.get(PROPERTIES)), Property[].class).length, is(1));
+    }
+
+    @Test
+    public void tells_appends_that_were_written_but_not_forced_apart_from_appends_that_were_not_written() throws Exception {
+        JsonArrayFile<Property> file = spy(new JsonArrayFile<>(PROPERTIES, Property.class));
+        doThrow(new UncheckedIOException(new IOException("Disk full"))).doCallRealMethod().when(file).appendAll(any());
+        doCallRealMethod().doThrow(new UncheckedIOException(new IOException("Device not ready"))).doCallRealMethod().when(file).force();
+        try (GroupCommitStore<Property> propertyStore = new GroupCommitStore<>(file, Duration.ofMillis(1), 1000)) {
+            Assertions.assertThrows(UncheckedIOException.class, () -> propertyStore.append(new Property(1, "New property", "04600", 140_000, 3, 160, 1)));
+            propertyStore.append(new Property(1, "New property", "04600", 140_000, 3, 160, 1));
+
+            NotDurableException notDurable = Assertions.assertThrows(NotDurableException.class, () -> propertyStore.append(new Property(2, "Another property", "04600", 120_000, 3, 160, 1)));
+            propertyStore.force();
+
+            assertThat(notDurable.change().after(), is(propertyStore.version()));
+            assertThat(new Gson().fromJson(Files.readString(Paths.get(PROPERTIES)), Property[].class).length, is(2));
+        }
+    }
+
+    @Test
+    public void sharded_storage_writes_only_the_shard_of_the_property_and_matches_its_alerts() throws Exception {
+        ShardedAlertRepository alertRepository = new ShardedAlertRepository(SHARDS);
+        alertRepository.add(new Alert(2, "email", "04600", null, null, null, null, null, null));
+        alertRepository.add(new Alert(2, "email", "08030", null, null, null, null, null, null));
+        ShardedPropertyRepository propertyRepository = new ShardedPropertyRepository(SHARDS);
+        EmailSender emailSender = mock(EmailSender.class);
+        AddProperty addProperty = new AddProperty(propertyRepository, new IndexedUserRepository(USERS_FILE), alertRepository,
+                new DirectNotificationDispatcher(emailSender, mock(SmsSender.class), mock(PushSender.class)), null, false);
+
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 100_000, 3, 160, 1));
+        addProperty.execute(new AddPropertyCommand(2, "Another property", "04610", 120_000, 3, 160, 1));
+
+        assertThat(propertyRepository.storedShards(), is(List.of("04")));
+        assertThat(alertRepository.storedShards(), is(List.of("04", "08")));
+        verify(emailSender, times(1)).sendEmail(any());
+        ShardedPropertyRepository reopened = new ShardedPropertyRepository(SHARDS);
+        reopened.loadShards(ForkJoinPool.commonPool());
+        Property[] found = new SearchProperty(reopened, null, false).search(new SearchQuery("04*", null, null, null, null, null, null));
+        assertThat(Arrays.stream(found).map(Property::getId).collect(Collectors.toList()), is(List.of(1, 2)));
+    }
+
     @Test
     public void logs_the_request_when_there_is_a_logger() throws Exception {
         InMemoryLogger logger = new InMemoryLogger();
@@ -317,6 +958,16 @@ public class AddPropertyTest {
     @AfterEach
     public void tearDown() {
         try {
+            if (Files.exists(Paths.get(SHARDS))) {
+                try (Stream<Path> shards = Files.list(Paths.get(SHARDS))) {
+                    for (Path shard : shards.collect(Collectors.toList())) {
+                        Files.delete(shard);
+                    }
+                }
+                Files.delete(Paths.get(SHARDS));
+            }
+            Files.deleteIfExists(Paths.get(PROPERTIES_JOURNAL));
+            Files.deleteIfExists(Paths.get(PROPERTIES_JOURNAL + ".lock"));
             Files.delete(Paths.get(PROPERTIES));
             Files.delete(Paths.get(ALERTS));
         } catch (IOException ignored) {
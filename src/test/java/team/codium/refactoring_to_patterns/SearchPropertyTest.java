@@ -1,21 +1,50 @@
 package team.codium.refactoring_to_patterns;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import jdk.incubator.vector.IntVector;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import team.codium.refactoring_to_patterns.application.AddProperty;
 import team.codium.refactoring_to_patterns.application.SearchProperty;
-import team.codium.refactoring_to_patterns.domain.InvalidPostalCodeException;
-import team.codium.refactoring_to_patterns.domain.InvalidPriceException;
-import team.codium.refactoring_to_patterns.domain.Property;
-import team.codium.refactoring_to_patterns.domain.SearchQuery;
-import team.codium.refactoring_to_patterns.infrastructure.InMemoryLogger;
-
+import team.codium.refactoring_to_patterns.domain.*;
+import team.codium.refactoring_to_patterns.infrastructure.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class SearchPropertyTest {
     private static final String PROPERTIES = "src/test/resources/testProperties.json";
+    private static final String TMP_PROPERTIES = "src/test/resources/tmpSearchPropertyProperties.json";
+    private static final String TMP_COLUMNAR_PROPERTIES = "src/test/resources/tmpSearchPropertyProperties.columns";
+    private static final String USERS_FILE = "src/test/resources/testUsers.json";
 
     @Test
     public void find_properties_of_a_postal_code() throws Exception {
@@ -27,6 +56,35 @@ public class SearchPropertyTest {
         assertThat(properties[0].getDescription(), is("Flat in Barcelona"));
     }
 
+    @Test
+    public void counts_the_searches_and_their_hits() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        SearchProperty searchProperty = new SearchProperty(new IndexedPropertyRepository(PROPERTIES), null, false, metrics);
+
+        searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+        searchProperty.search(new SearchQuery("08030", null, null, null, null, null, null));
+
+        assertThat(metrics.counter("searchProperty.searches"), is(2L));
+        assertThat(metrics.counter("searchProperty.hits"), is(4L));
+        assertThat(metrics.histogram("searchProperty.search").count(), is(2L));
+        assertThat(metrics.histogram("searchProperty.search").valueAtPercentile(100) <= metrics.histogram("searchProperty.search").maximum(), is(true));
+    }
+
+    @Test
+    public void times_a_streamed_search_until_its_page_has_been_read() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        SearchProperty searchProperty = new SearchProperty(new IndexedPropertyRepository(PROPERTIES), null, false, metrics);
+        assertThat(metrics.histogram("searchProperty.search").count(), is(0L));
+
+        try (Stream<Property> properties = searchProperty.stream(new SearchQuery("04600", null, null, null, null, null, null))) {
+            assertThat(metrics.histogram("searchProperty.search").count(), is(0L));
+            assertThat(properties.count(), is(3L));
+        }
+
+        assertThat(metrics.histogram("searchProperty.search").count(), is(1L));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> metrics.histogram("searchProperty.unknown"));
+    }
+
     @Test
     public void find_properties_within_a_price_range() throws Exception {
         SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
@@ -57,6 +115,347 @@ public class SearchPropertyTest {
         assertThat(properties[0].getDescription(), is("Cheap flat"));
     }
 
+    @Test
+    public void price_range_bounds_are_inclusive() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
+
+        Property[] properties = searchProperty.search(new SearchQuery("04600", 40_000, 1_000_000, null, null, null, null));
+
+        assertThat(properties.length, is(2));
+        assertThat(properties[0].getDescription(), is("Cheap flat"));
+        assertThat(properties[1].getDescription(), is("Expensive flat"));
+    }
+
+    @Test
+    public void finds_properties_added_through_the_same_repository() throws Exception {
+        IndexedPropertyRepository propertyRepository = new IndexedPropertyRepository(TMP_PROPERTIES);
+        SearchProperty searchProperty = new SearchProperty(propertyRepository, null, false);
+        AddProperty addProperty = new AddProperty(propertyRepository, new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository("src/test/resources/tmpSearchPropertyAlerts.json"), mock(NotificationDispatcher.class), null, false);
+        searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 140_000, 3, 160, 1));
+
+        Property[] properties = searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+        assertThat(properties.length, is(1));
+        assertThat(properties[0].getId(), is(1));
+    }
+
+    @Test
+    public void streaming_search_filters_every_range_while_reading_the_file() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(new StreamingPropertyRepository(PROPERTIES), null, false);
+
+        Property[] properties = searchProperty.search(new SearchQuery("04600", 10_000, 100_000, 1, 2, 80, 120));
+
+        assertThat(properties.length, is(1));
+        assertThat(properties[0].getDescription(), is("Cheap flat"));
+    }
+
+    @Test
+    public void streaming_search_does_not_add_the_searched_postal_code_to_the_dictionary() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(new StreamingPropertyRepository(PROPERTIES), null, false);
+
+        Property[] properties = searchProperty.search(new SearchQuery("09871", null, null, null, null, null, null));
+
+        assertThat(properties.length, is(0));
+        assertThat(PostalCodeDictionary.find("09871"), is(PostalCodeDictionary.NOT_FOUND));
+    }
+
+    @Test
+    public void streaming_search_results_can_be_consumed_lazily() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(new StreamingPropertyRepository(PROPERTIES), null, false);
+
+        try (Stream<Property> properties = searchProperty.stream(new SearchQuery("04600", null, null, null, null, null, null))) {
+            Iterator<Property> iterator = properties.iterator();
+            assertThat(iterator.next().getDescription(), is("Really cheap flat"));
+            assertThat(iterator.next().getDescription(), is("Cheap flat"));
+        }
+    }
+
+    @Test
+    public void columnar_search_reads_a_snapshot_of_the_properties_file() throws Exception {
+        ColumnarPropertyRepository.create(TMP_COLUMNAR_PROPERTIES, new JsonArrayFile<>(PROPERTIES, Property.class));
+        SearchProperty searchProperty = new SearchProperty(new ColumnarPropertyRepository(TMP_COLUMNAR_PROPERTIES), null, false);
+
+        Property[] properties = searchProperty.search(new SearchQuery("04600", 10_000, 100_000, 1, 2, 80, 120));
+
+        assertThat(properties.length, is(1));
+        assertThat(properties[0].getId(), is(2));
+        assertThat(properties[0].getDescription(), is("Cheap flat"));
+        assertThat(properties[0].getPostalCode(), is("04600"));
+    }
+
+    @Test
+    public void off_heap_search_returns_properties_in_the_same_price_order_as_the_indexed_one() throws Exception {
+        Files.copy(Paths.get(PROPERTIES), Paths.get(TMP_PROPERTIES));
+        OffHeapPropertyRepository offHeapRepository = new OffHeapPropertyRepository(new JsonArrayFile<>(TMP_PROPERTIES, Property.class), 3);
+        offHeapRepository.addAll(List.of(new Property(5, "Pricier flat", "04600", 300_000, 2, 90, 1), new Property(6, "Same price flat", "04600", 40_000, 2, 90, 1)));
+        offHeapRepository.addAll(List.of(new Property(7, "Flat in between", "04600", 100_000, 2, 90, 1), new Property(8, "Another same price flat", "04600", 40_000, 2, 90, 1)));
+        SearchQuery query = new SearchQuery("04600", 40_000, 300_000, null, null, null, null);
+
+        Property[] offHeap = new SearchProperty(offHeapRepository, null, false).search(query);
+        Property[] reloaded = new SearchProperty(new OffHeapPropertyRepository(TMP_PROPERTIES), null, false).search(query);
+        Property[] indexed = new SearchProperty(new IndexedPropertyRepository(TMP_PROPERTIES), null, false).search(query);
+
+        assertThat(Arrays.stream(offHeap).map(Property::getId).collect(Collectors.toList()), is(List.of(2, 6, 8, 7, 5)));
+        assertThat(Arrays.stream(reloaded).map(Property::getId).collect(Collectors.toList()), is(List.of(2, 6, 8, 7, 5)));
+        assertThat(Arrays.stream(indexed).map(Property::getId).collect(Collectors.toList()), is(List.of(2, 6, 8, 7, 5)));
+    }
+
+    @Test
+    public void off_heap_search_finds_stored_and_added_properties_across_chunks() throws Exception {
+        Files.copy(Paths.get(PROPERTIES), Paths.get(TMP_PROPERTIES));
+        OffHeapPropertyRepository propertyRepository = new OffHeapPropertyRepository(new JsonArrayFile<>(TMP_PROPERTIES, Property.class), 2);
+        SearchProperty searchProperty = new SearchProperty(propertyRepository, null, false);
+        AddProperty addProperty = new AddProperty(propertyRepository, new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository("src/test/resources/tmpSearchPropertyAlerts.json"), mock(NotificationDispatcher.class), null, false);
+
+        Property[] properties = searchProperty.search(new SearchQuery("04600", 10_000, 100_000, 1, 2, 80, 120));
+        addProperty.execute(new AddPropertyCommand(100, "\u00c1tico", "04600", 90_000, 2, 100, 1));
+        Property[] afterAdding = searchProperty.search(new SearchQuery("04600", 10_000, 100_000, 1, 2, 80, 120));
+
+        assertThat(properties.length, is(1));
+        assertThat(properties[0].getDescription(), is("Cheap flat"));
+        assertThat(afterAdding.length, is(2));
+        assertThat(afterAdding[1].getId(), is(100));
+        assertThat(afterAdding[1].getDescription(), is("\u00c1tico"));
+        assertThat(afterAdding[1].getOwnerId(), is(1));
+        assertThat(propertyRepository.size() > 2, is(true));
+    }
+
+    @Test
+    public void vectorized_and_scalar_range_filters_find_the_same_properties() {
+        int lanes = IntVector.SPECIES_PREFERRED.length();
+        int[] boundaries = {Integer.MIN_VALUE, Integer.MIN_VALUE + 1, 0, 3, 5, Integer.MAX_VALUE - 1, Integer.MAX_VALUE};
+        Random random = new Random(17);
+        int[] rooms = new int[lanes * 5 + lanes / 2 + 1];
+        int[] squareMeters = new int[rooms.length];
+        for (int row = 0; row < rooms.length; row++) {
+            rooms[row] = random.nextInt(4) == 0 ? boundaries[random.nextInt(boundaries.length)] : random.nextInt(8);
+            squareMeters[row] = random.nextInt(4) == 0 ? boundaries[random.nextInt(boundaries.length)] : random.nextInt(8);
+        }
+        int[][] bounds = {{3, 5}, {5, 5}, {Integer.MIN_VALUE, Integer.MAX_VALUE}, {Integer.MIN_VALUE, Integer.MIN_VALUE},
+                {Integer.MAX_VALUE, Integer.MAX_VALUE}, {Integer.MIN_VALUE, 3}, {3, Integer.MAX_VALUE}, {5, 3}};
+        int[][] rowRanges = {{0, rooms.length}, {1, rooms.length}, {lanes - 1, rooms.length - 1}, {0, lanes * 2}, {lanes, lanes}, {0, 0}};
+
+        for (int[] roomBounds : bounds) {
+            for (int[] squareMetersBounds : bounds) {
+                RangeFilter.ColumnRange roomRange = new RangeFilter.ColumnRange(rooms, roomBounds[0], roomBounds[1]);
+                RangeFilter.ColumnRange squareMetersRange = new RangeFilter.ColumnRange(squareMeters, squareMetersBounds[0], squareMetersBounds[1]);
+                IntPredicate isInBothRanges = row -> rooms[row] >= roomBounds[0] && rooms[row] <= roomBounds[1]
+                        && squareMeters[row] >= squareMetersBounds[0] && squareMeters[row] <= squareMetersBounds[1];
+                for (int[] rows : rowRanges) {
+                    long[] scalarSelection = RangeFilter.scalar().select(rows[0], rows[1], roomRange, squareMetersRange);
+                    long[] vectorizedSelection = RangeFilter.vectorized().select(rows[0], rows[1], roomRange, squareMetersRange);
+
+                    for (int row = rows[0]; row < rows[1]; row++) {
+                        assertThat(RangeFilter.isSelected(scalarSelection, row - rows[0]), is(isInBothRanges.test(row)));
+                        assertThat(RangeFilter.isSelected(vectorizedSelection, row - rows[0]), is(isInBothRanges.test(row)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallel_search_returns_the_same_properties_in_the_same_order() throws Exception {
+        Property[] generated = new Property[5_000];
+        for (int id = 0; id < generated.length; id++) {
+            generated[id] = new Property(id, "Flat " + id, "04600", 10_000 + (id * 7919) % 500_000, id % 5, 30 + id % 200, 1);
+        }
+        Files.writeString(Paths.get(TMP_PROPERTIES), new Gson().toJson(generated));
+        SearchQuery query = new SearchQuery("04600", 50_000, 400_000, 2, 3, 60, 180);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        Property[] sequential = new SearchProperty(TMP_PROPERTIES, null, false, PartitionedScan.sequential()).search(query);
+        Property[] parallel = new SearchProperty(TMP_PROPERTIES, null, false, new PartitionedScan(pool, 100)).search(query);
+        pool.shutdown();
+
+        assertThat(parallel.length, is(sequential.length));
+        for (int index = 0; index < sequential.length; index++) {
+            assertThat(parallel[index].getId(), is(sequential[index].getId()));
+        }
+    }
+
+    @Test
+    public void returns_only_the_requested_page_in_the_requested_order() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
+        SearchQuery bySquareMetersDescending = new SearchQuery("04600", null, null, null, null, null, null)
+                .sortedBy(SortKey.SQUARE_METERS, SortDirection.DESCENDING);
+
+        Property[] firstPage = searchProperty.search(bySquareMetersDescending.page(0, 2));
+        Property[] secondPage = searchProperty.search(bySquareMetersDescending.page(2, 2));
+
+        assertThat(firstPage.length, is(2));
+        assertThat(firstPage[0].getId(), is(3));
+        assertThat(firstPage[1].getId(), is(2));
+        assertThat(secondPage.length, is(1));
+        assertThat(secondPage[0].getId(), is(1));
+    }
+
+    @Test
+    public void pages_of_a_sorted_search_do_not_overlap() throws Exception {
+        Property[] generated = new Property[500];
+        for (int id = 0; id < generated.length; id++) {
+            generated[id] = new Property(id, "Flat " + id, "04600", 10_000 + (id * 7919) % 5_000, id % 5, 30 + id % 200, 1);
+        }
+        Files.writeString(Paths.get(TMP_PROPERTIES), new Gson().toJson(generated));
+        SearchProperty searchProperty = new SearchProperty(new StreamingPropertyRepository(TMP_PROPERTIES), null, false);
+        SearchQuery byRooms = new SearchQuery("04600", null, null, null, null, null, null).sortedBy(SortKey.ROOMS, SortDirection.ASCENDING);
+
+        Property[] everything = searchProperty.search(byRooms);
+        for (int offset = 0; offset < generated.length; offset += 20) {
+            Property[] page = searchProperty.search(byRooms.page(offset, 20));
+            for (int index = 0; index < page.length; index++) {
+                assertThat(page[index].getId(), is(everything[offset + index].getId()));
+            }
+        }
+    }
+
+    @Test
+    public void repeated_searches_are_served_from_the_cache_until_their_postal_code_changes() throws Exception {
+        CachingPropertyRepository propertyRepository = new CachingPropertyRepository(new IndexedPropertyRepository(TMP_PROPERTIES), 100);
+        SearchProperty searchProperty = new SearchProperty(propertyRepository, null, false);
+        AddProperty addProperty = new AddProperty(propertyRepository, new IndexedUserRepository(USERS_FILE), new IndexedAlertRepository("src/test/resources/tmpSearchPropertyAlerts.json"), mock(NotificationDispatcher.class), null, false);
+        addProperty.execute(new AddPropertyCommand(1, "New property", "04600", 140_000, 3, 160, 1));
+        addProperty.execute(new AddPropertyCommand(2, "Another property", "08030", 140_000, 3, 160, 1));
+        searchProperty.search(new SearchQuery("04600", null, 200_000, null, null, null, null));
+        searchProperty.search(new SearchQuery("08030", null, null, null, null, null, null));
+
+        searchProperty.search(new SearchQuery("04600", null, 200_000, null, null, null, null));
+        assertThat(propertyRepository.hits(), is(1L));
+        assertThat(propertyRepository.misses(), is(2L));
+
+        addProperty.execute(new AddPropertyCommand(3, "Newer property", "04600", 150_000, 3, 160, 1));
+
+        Property[] properties = searchProperty.search(new SearchQuery("04600", null, 200_000, null, null, null, null));
+        searchProperty.search(new SearchQuery("08030", null, null, null, null, null, null));
+        assertThat(properties.length, is(2));
+        assertThat(propertyRepository.hits(), is(2L));
+        assertThat(propertyRepository.misses(), is(3L));
+    }
+
+    @Test
+    public void the_cache_sees_properties_another_repository_added_to_the_same_file() throws Exception {
+        CachingPropertyRepository propertyRepository = new CachingPropertyRepository(new IndexedPropertyRepository(TMP_PROPERTIES), 100, Duration.ZERO);
+        IndexedPropertyRepository otherWriter = new IndexedPropertyRepository(TMP_PROPERTIES);
+        SearchProperty searchProperty = new SearchProperty(propertyRepository, null, false);
+        propertyRepository.add(new Property(1, "New property", "04600", 140_000, 3, 160, 1));
+        assertThat(searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null)).length, is(1));
+
+        otherWriter.add(new Property(2, "Property added elsewhere", "04600", 150_000, 3, 160, 1));
+
+        Property[] properties = searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+        assertThat(properties.length, is(2));
+        assertThat(properties[1].getDescription(), is("Property added elsewhere"));
+    }
+
+    @Test
+    public void cache_hits_do_not_check_the_delegate_version_within_the_refresh_interval() throws Exception {
+        IndexedPropertyRepository indexedRepository = spy(new IndexedPropertyRepository(PROPERTIES));
+        CachingPropertyRepository propertyRepository = new CachingPropertyRepository(indexedRepository, 100, Duration.ofMinutes(1));
+        SearchProperty searchProperty = new SearchProperty(propertyRepository, null, false);
+
+        for (int search = 0; search < 5; search++) {
+            searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+        }
+
+        assertThat(propertyRepository.hits(), is(4L));
+        verify(indexedRepository, times(1)).version();
+    }
+
+    @Test
+    public void the_cache_evicts_the_least_recently_used_search() throws Exception {
+        CachingPropertyRepository propertyRepository = new CachingPropertyRepository(new IndexedPropertyRepository(PROPERTIES), 2);
+        SearchProperty searchProperty = new SearchProperty(propertyRepository, null, false);
+
+        searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+        searchProperty.search(new SearchQuery("08030", null, null, null, null, null, null));
+        searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+        searchProperty.search(new SearchQuery("04600", 0, null, null, null, null, null));
+        searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+        searchProperty.search(new SearchQuery("08030", null, null, null, null, null, null));
+
+        assertThat(propertyRepository.size(), is(2));
+        assertThat(propertyRepository.hits(), is(2L));
+        assertThat(propertyRepository.misses(), is(4L));
+    }
+
+    @Test
+    public void finds_properties_of_several_postal_codes_or_a_prefix_ordered_by_price() throws Exception {
+        Files.copy(Paths.get(PROPERTIES), Paths.get(TMP_PROPERTIES));
+        IndexedPropertyRepository propertyRepository = new IndexedPropertyRepository(TMP_PROPERTIES);
+        propertyRepository.add(new Property(5, "Flat next door", "04601", 50_000, 2, 70, 1));
+        propertyRepository.add(new Property(6, "Flat further away", "04700", 10_000, 2, 70, 1));
+        SearchProperty searchProperty = new SearchProperty(propertyRepository, null, false);
+
+        Property[] byPrefix = searchProperty.search(new SearchQuery("046*", null, null, null, null, null, null));
+        Property[] bySet = searchProperty.search(new SearchQuery("04600", null, 500_000, null, null, null, null).inPostalCodes(List.of("08030", "04600", "04700")));
+        Property[] streamed = new SearchProperty(new StreamingPropertyRepository(TMP_PROPERTIES), null, false)
+                .search(new SearchQuery("046*", null, null, null, null, null, null));
+
+        assertThat(Arrays.stream(byPrefix).map(Property::getId).collect(Collectors.toList()), is(List.of(1, 2, 5, 3)));
+        assertThat(Arrays.stream(bySet).map(Property::getId).collect(Collectors.toList()), is(List.of(1, 6, 2, 4)));
+        assertThat(Arrays.stream(streamed).map(Property::getId).sorted().collect(Collectors.toList()), is(List.of(1, 2, 3, 5)));
+    }
+
+    @Test
+    public void off_heap_and_columnar_searches_walk_their_own_postal_codes_for_a_selection() throws Exception {
+        Files.copy(Paths.get(PROPERTIES), Paths.get(TMP_PROPERTIES));
+        IndexedPropertyRepository indexedRepository = new IndexedPropertyRepository(TMP_PROPERTIES);
+        indexedRepository.add(new Property(5, "Flat next door", "04601", 50_000, 2, 70, 1));
+        indexedRepository.add(new Property(6, "Flat further away", "04700", 10_000, 2, 70, 1));
+        OffHeapPropertyRepository offHeapRepository = spy(new OffHeapPropertyRepository(TMP_PROPERTIES));
+        ColumnarPropertyRepository.create(TMP_COLUMNAR_PROPERTIES, new JsonArrayFile<>(TMP_PROPERTIES, Property.class));
+        ColumnarPropertyRepository columnarRepository = spy(new ColumnarPropertyRepository(TMP_COLUMNAR_PROPERTIES));
+        SearchQuery byPrefix = new SearchQuery("046*", null, null, null, null, null, null);
+        SearchQuery bySet = new SearchQuery("04600", null, 500_000, null, null, null, null).inPostalCodes(List.of("08030", "04600", "04700"));
+
+        for (PropertySearch propertySearch : List.of(offHeapRepository, columnarRepository)) {
+            SearchProperty searchProperty = new SearchProperty(propertySearch, null, false);
+            assertThat(Arrays.stream(searchProperty.search(byPrefix)).map(Property::getId).collect(Collectors.toList()), is(List.of(1, 2, 5, 3)));
+            assertThat(Arrays.stream(searchProperty.search(bySet)).map(Property::getId).collect(Collectors.toList()), is(List.of(1, 6, 2, 4)));
+        }
+        verify(offHeapRepository, never()).find(anyString(), any(), any(), any());
+        verify(columnarRepository, never()).find(anyString(), any(), any(), any());
+        assertThat(byPrefix.postalCode(), is("046*"));
+    }
+
+    @Test
+    public void a_postal_code_repeated_in_the_selection_is_searched_once() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
+
+        Property[] repeated = searchProperty.search(new SearchQuery("04600,04600", null, null, null, null, null, null));
+        Property[] typed = searchProperty.search(new SearchQuery("08030", null, null, null, null, null, null).inPostalCodes(List.of("04600", "04600")));
+        Property[] byTypedPrefix = searchProperty.search(new SearchQuery("08030", null, null, null, null, null, null).inPostalCodesStartingWith("046"));
+
+        Property[] single = searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+        assertThat(single.length > 0, is(true));
+        assertThat(Arrays.asList(repeated), is(Arrays.asList(single)));
+        assertThat(Arrays.asList(typed), is(Arrays.asList(single)));
+        assertThat(Arrays.asList(byTypedPrefix), is(Arrays.asList(single)));
+    }
+
+    @Test
+    public void fails_when_the_prefix_has_no_digits() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
+
+        InvalidPostalCodeException exception = Assertions.assertThrows(InvalidPostalCodeException.class, () ->
+                searchProperty.search(new SearchQuery("*", null, null, null, null, 0, 0))
+        );
+
+        assertThat(exception.getMessage(), is("* is not a valid postal code prefix"));
+    }
+
+    @Test
+    public void fails_when_the_postal_code_prefix_is_not_valid() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
+
+        InvalidPostalCodeException exception = Assertions.assertThrows(InvalidPostalCodeException.class, () ->
+                searchProperty.search(new SearchQuery("04a*", null, null, null, null, 0, 0))
+        );
+
+        assertThat(exception.getMessage(), is("04a* is not a valid postal code prefix"));
+    }
+
     @Test
     public void fails_when_the_postal_code_is_not_valid() throws Exception {
         SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
@@ -68,6 +467,27 @@ public class SearchPropertyTest {
         assertThat(exception.getMessage(), is("046000 is not a valid postal code"));
     }
 
+    @Test
+    public void fails_when_the_postal_code_has_something_other_than_five_digits() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
+
+        for (String postalCode : new String[]{"0460a", "04600\n", "\uFF10\uFF14\uFF16\uFF10\uFF10", ""}) {
+            Assertions.assertThrows(InvalidPostalCodeException.class, () ->
+                    searchProperty.search(new SearchQuery(postalCode, null, null, null, null, 0, 0)));
+        }
+    }
+
+    @Test
+    public void found_properties_share_one_instance_of_their_postal_code() throws Exception {
+        SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
+
+        Property[] properties = searchProperty.search(new SearchQuery("04600", null, null, null, null, null, null));
+
+        assertThat(properties.length, is(3));
+        assertThat(properties[0].getPostalCode() == properties[1].getPostalCode() && properties[1].getPostalCode() == properties[2].getPostalCode(), is(true));
+        assertThat(properties[0].getPostalCodeId(), is(PostalCodeDictionary.find("04600")));
+    }
+
     @Test
     public void fails_when_minimum_price_is_negative() throws Exception {
         SearchProperty searchProperty = new SearchProperty(PROPERTIES, null, false);
@@ -104,6 +524,107 @@ public class SearchPropertyTest {
         assertThat(loggedData.get("maximumPrice"), is(200_000));
     }
 
+    @Test
+    public void the_ring_buffer_keeps_logging_after_an_event_fails_to_fill_and_after_it_is_closed() {
+        InMemoryLogger sink = new InMemoryLogger();
+        RingBufferLogger logger = new RingBufferLogger(sink, 2);
+        HashMap<String, Object> failingData = new HashMap<>() {
+            @Override
+            public void forEach(BiConsumer<? super String, ? super Object> action) {
+                throw new IllegalStateException("Unreadable data");
+            }
+        };
+
+        Assertions.assertThrows(IllegalStateException.class, () -> logger.log(failingData));
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int event = 0; event < 4; event++) {
+                logger.log(new HashMap<>(Map.of("event", event)));
+            }
+            logger.close();
+            for (int event = 4; event < 8; event++) {
+                logger.log(new HashMap<>(Map.of("event", event)));
+            }
+        });
+
+        assertThat(sink.getLoggedData().stream().filter(data -> data.containsKey("event")).count(), is(8L));
+        assertThat(sink.getLoggedData().get(sink.getLoggedData().size() - 1).get("event"), is(7));
+    }
+
+    @Test
+    public void logs_requests_from_many_threads_through_the_ring_buffer_keeping_only_the_latest() throws Exception {
+        RingBufferLogger logger = new RingBufferLogger(new InMemoryLogger(100), 8);
+        SearchProperty searchProperty = new SearchProperty(new IndexedPropertyRepository(PROPERTIES), logger, false);
+        Thread[] searchers = new Thread[4];
+        for (int searcher = 0; searcher < searchers.length; searcher++) {
+            int minimumPrice = searcher * 1_000;
+            searchers[searcher] = new Thread(() -> {
+                for (int search = 0; search < 500; search++) {
+                    try {
+                        searchProperty.search(new SearchQuery("04600", minimumPrice, minimumPrice + search, null, null, null, null));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            searchers[searcher].start();
+        }
+        for (Thread searcher : searchers) {
+            searcher.join();
+        }
+        logger.close();
+
+        assertThat(logger.getLoggedData().size(), is(100));
+        assertThat(logger.failedEvents(), is(0L));
+        for (HashMap<String, Object> loggedData : logger.getLoggedData()) {
+            assertThat(loggedData.get("postalCode"), is("04600"));
+            assertThat((Integer) loggedData.get("maximumPrice") - (Integer) loggedData.get("minimumPrice") < 500, is(true));
+        }
+    }
+
+    @Test
+    public void the_ring_buffer_hands_its_events_to_a_json_lines_sink_without_building_maps() throws Exception {
+        StringWriter lines = new StringWriter();
+        JsonLinesLogger sink = new JsonLinesLogger(lines) {
+            @Override
+            public void log(HashMap<String, Object> data) {
+                throw new IllegalStateException("The ring buffer should publish its events");
+            }
+        };
+        RingBufferLogger logger = new RingBufferLogger(sink, 4);
+        SearchProperty searchProperty = new SearchProperty(new IndexedPropertyRepository(PROPERTIES), logger, true);
+
+        for (int search = 0; search < 10; search++) {
+            searchProperty.search(new SearchQuery("04600", search, 200_000, null, null, null, null));
+        }
+        logger.close();
+
+        assertThat(logger.failedEvents(), is(0L));
+        String[] logged = lines.toString().split("\n");
+        assertThat(logged.length, is(10));
+        for (int search = 0; search < logged.length; search++) {
+            JsonObject loggedData = JsonParser.parseString(logged[search]).getAsJsonObject();
+            assertThat(loggedData.get("postalCode").getAsString(), is("04600"));
+            assertThat(loggedData.get("minimumPrice").getAsInt(), is(search));
+            assertThat(loggedData.get("maximumPrice").getAsInt(), is(200_000));
+            assertThat(loggedData.get("date").getAsString(), is(LocalDate.now().toString()));
+        }
+    }
+
+    @Test
+    public void the_in_memory_logger_hands_out_its_own_list_unless_it_is_capped() {
+        InMemoryLogger logger = new InMemoryLogger();
+        InMemoryLogger cappedLogger = new InMemoryLogger(2);
+        for (int event = 0; event < 3; event++) {
+            logger.log(new HashMap<>(Map.of("event", event)));
+            cappedLogger.log(new HashMap<>(Map.of("event", event)));
+        }
+
+        assertThat(logger.getLoggedData() == logger.getLoggedData(), is(true));
+        assertThat(logger.getLoggedData().size(), is(3));
+        assertThat(cappedLogger.getLoggedData().size(), is(2));
+        assertThat(cappedLogger.getLoggedData().get(0).get("event"), is(1));
+    }
+
     @Test
     public void the_logged_request_contains_the_date_when_required() throws Exception {
         InMemoryLogger logger = new InMemoryLogger();
@@ -125,4 +646,13 @@ public class SearchPropertyTest {
         HashMap<String, Object> loggedData = logger.getLoggedData().get(0);
         assertThat(loggedData.containsKey("date"), is(false));
     }
+
+    @AfterEach
+    public void tearDown() {
+        try {
+            Files.deleteIfExists(Paths.get(TMP_PROPERTIES));
+            Files.deleteIfExists(Paths.get(TMP_COLUMNAR_PROPERTIES));
+        } catch (IOException ignored) {
+        }
+    }
 }